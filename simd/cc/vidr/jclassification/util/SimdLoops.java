@@ -0,0 +1,83 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+package cc.vidr.jclassification.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The inner loops of {@link VectorMath}, written with the JDK's incubating
+ * Vector API, using the processor's preferred vector size. This class must
+ * be compiled and run with <code>--add-modules jdk.incubator.vector</code>.
+ * 
+ * @author  David A Roberts
+ */
+class SimdLoops implements VectorMath.Loops {
+    private static final VectorSpecies<Double> SPECIES =
+        DoubleVector.SPECIES_PREFERRED;
+    
+    SimdLoops() {
+        if(SPECIES.length() < 2)
+            throw new UnsupportedOperationException(
+                    "vectors hold a single double");
+    }
+    
+    public double dotProduct(double[] x, int xOffset,
+            double[] y, int yOffset, int n) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        final int end = SPECIES.loopBound(n);
+        int i = 0;
+        for(; i < end; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, x, xOffset + i),
+                         b = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            sum = a.mul(b).add(sum);
+        }
+        double prod = sum.reduceLanes(VectorOperators.ADD);
+        for(; i < n; i++)
+            prod += x[xOffset + i] * y[yOffset + i];
+        return prod;
+    }
+    
+    public double sqDist(double[] x, int xOffset,
+            double[] y, int yOffset, int n) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        final int end = SPECIES.loopBound(n);
+        int i = 0;
+        for(; i < end; i += SPECIES.length()) {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, x, xOffset + i)
+                .sub(DoubleVector.fromArray(SPECIES, y, yOffset + i));
+            sum = d.mul(d).add(sum);
+        }
+        double r2 = sum.reduceLanes(VectorOperators.ADD);
+        for(; i < n; i++) {
+            final double d = x[xOffset + i] - y[yOffset + i];
+            r2 += d*d;
+        }
+        return r2;
+    }
+    
+    public String toString() {
+        return "Vector API, " + SPECIES.length() + " lanes";
+    }
+}
@@ -23,28 +23,196 @@
 package cc.vidr.jclassification.ann;
 
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cc.vidr.jclassification.ann.optimizer.Optimizer;
+import cc.vidr.jclassification.ann.optimizer.Schedule;
+import cc.vidr.jclassification.util.TaskUtil;
+import cc.vidr.jclassification.util.VectorMath;
 
 /**
  * Implements a multi-layer feed-forward artificial neural network.
- * Training is performed with stochastic back-propagation.
+ * Training is performed with stochastic back-propagation, either one
+ * sample at a time or in mini-batches.
  * 
  * @author  David A Roberts
  */
 public class ANN implements Serializable {
-    private static final long serialVersionUID = -7509606549734140402L;
+    private static final long serialVersionUID = -3051834824661255481L;
     private static final Random random = new Random();
+    /** The number of samples in each block of a mini-batch calculation */
+    private static final int BLOCK_SIZE = 32;
     
     public final int NUM_LAYERS, INPUT_LAYER, FIRST_HIDDEN_LAYER,
                      LAST_HIDDEN_LAYER, OUTPUT_LAYER;
     
-    /** Connection weights [layer of j][j][i] */
-    private double[][][] w;
+    /**
+     * Connection weights [layer of j][j*size(layer-1) + i], with each
+     * layer's weight matrix stored in one row-major array
+     */
+    private double[][] w;
     /** Current unit activations [layer][j] */
     private double[][] y;
     /** Current delta values [layer][j] */
     private double[][] delta;
+    /** Buffers for mini-batch training on the calling thread */
+    private transient Batch batch;
+    
+    /**
+     * How the workers of a parallel training run share the weights.
+     */
+    public enum Mode {
+        /**
+         * Each worker trains on its own random batches, updating the shared
+         * weights without any locking.
+         */
+        HOGWILD,
+        /**
+         * Each batch is split between the workers, whose gradients are
+         * summed before a single update of the weights.
+         */
+        SYNCHRONOUS
+    }
+    
+    /**
+     * Settings for parallel training.
+     */
+    public static class Options {
+        /**
+         * The executor to run the workers with, or null to run them one
+         * after another on the calling thread.
+         */
+        public ExecutorService executor = null;
+        /** The number of workers */
+        public int numThreads = Runtime.getRuntime().availableProcessors();
+        /** How the workers share the weights */
+        public Mode mode = Mode.SYNCHRONOUS;
+        /** The number of samples in each batch */
+        public int batchSize = 32;
+        /**
+         * The seed used to choose samples. Synchronous runs with the same
+         * seed give identical results whatever the executor; Hogwild runs
+         * are only reproducible without an executor.
+         */
+        public long seed = System.nanoTime();
+        /**
+         * The rule used to update the weights, or null for plain gradient
+         * descent
+         */
+        public Optimizer optimizer = null;
+        /** The learning rate schedule, or null for a constant rate */
+        public Schedule schedule = null;
+        /**
+         * The number of iterations between evaluations of the training
+         * error, or 0 to evaluate it only at the end. The stopping
+         * conditions below are only checked at evaluations.
+         */
+        public int evaluationInterval = 0;
+        /** Stop once the training error falls to this value */
+        public double targetLoss = 0;
+        /**
+         * Stop once the training error improves by less than this fraction
+         * between evaluations, or 0 to never stop early
+         */
+        public double tolerance = 0;
+    }
+    
+    /**
+     * Statistics describing a training run, so that different settings
+     * may be compared by the time they take to reach a given error.
+     */
+    public static class Result {
+        /** The number of training iterations performed */
+        public final long numSteps;
+        /** The time taken to train, in milliseconds */
+        public final long time;
+        /** The training error at each evaluation */
+        public final double[] losses;
+        /** The time of each evaluation, in milliseconds from the start */
+        public final long[] times;
+        /**
+         * The time taken to reach the target error, in milliseconds, or -1
+         * if it was not reached
+         */
+        public final long timeToTarget;
+        
+        Result(long numSteps, long time, List<Double> losses,
+                List<Long> times, long timeToTarget) {
+            this.numSteps = numSteps;
+            this.time = time;
+            this.losses = new double[losses.size()];
+            this.times = new long[times.size()];
+            for(int i = 0; i < this.losses.length; i++) {
+                this.losses[i] = losses.get(i);
+                this.times[i] = times.get(i);
+            }
+            this.timeToTarget = timeToTarget;
+        }
+        
+        /**
+         * Return the training error at the end of the run.
+         */
+        public double loss() {
+            return losses.length == 0 ? Double.NaN : losses[losses.length-1];
+        }
+        
+        /**
+         * Return the time at which the training error was first seen to be
+         * at most the given value, in milliseconds, or -1 if it never was.
+         */
+        public long timeToLoss(double loss) {
+            for(int i = 0; i < losses.length; i++)
+                if(losses[i] <= loss)
+                    return times[i];
+            return -1;
+        }
+        
+        public String toString() {
+            return "steps=" + numSteps + " time=" + time + "ms" +
+                " loss=" + loss() + (timeToTarget < 0 ? "" :
+                    " timeToTarget=" + timeToTarget + "ms");
+        }
+    }
+    
+    /**
+     * The activation, delta and gradient buffers for mini-batch training,
+     * so that several threads can train the same network.
+     */
+    private class Batch {
+        /** Mini-batch activations [layer][b*size(layer) + j] */
+        double[][] y;
+        /** Mini-batch delta values [layer][b*size(layer) + j] */
+        double[][] delta;
+        /** Summed weight gradients [layer of j][j*size(layer-1) + i] */
+        final double[][] grad = new double[NUM_LAYERS][];
+        
+        Batch(int capacity) {
+            for(int layer = FIRST_HIDDEN_LAYER; layer <= OUTPUT_LAYER; layer++)
+                grad[layer] = new double[size(layer) * size(layer-1)];
+            allocate(capacity);
+        }
+        
+        /**
+         * Make sure the buffers can hold the given number of samples.
+         */
+        void allocate(int count) {
+            if(y != null && y[INPUT_LAYER].length >= count*size(INPUT_LAYER))
+                return;
+            y = new double[NUM_LAYERS][];
+            delta = new double[NUM_LAYERS][];
+            for(int layer = INPUT_LAYER; layer <= OUTPUT_LAYER; layer++) {
+                y[layer] = new double[count * size(layer)];
+                delta[layer] = new double[count * size(layer)];
+            }
+        }
+    }
     
     /**
      * Create a new ANN.
@@ -59,7 +227,7 @@ public class ANN implements Serializable {
         FIRST_HIDDEN_LAYER = 1;
         LAST_HIDDEN_LAYER = NUM_LAYERS - 2;
         OUTPUT_LAYER = NUM_LAYERS - 1;
-        this.w = new double[NUM_LAYERS][][];
+        this.w = new double[NUM_LAYERS][];
         this.y = new double[NUM_LAYERS][];
         this.delta = new double[NUM_LAYERS][];
         
@@ -77,10 +245,11 @@ public class ANN implements Serializable {
             if(layer != INPUT_LAYER) {
                 // initialise weights to small random values
                 int prevLayerSize = layerSizes[layer-1] + 1;
-                this.w[layer] = new double[layerSize][prevLayerSize];
+                this.w[layer] = new double[layerSize * prevLayerSize];
                 for(int j = nonBiasUnit(layer); j < size(layer); j++)
                     for(int i = 0; i < size(layer-1); i++)
-                        this.w[layer][j][i] = random.nextGaussian()*0.1;
+                        this.w[layer][j*prevLayerSize + i] =
+                            random.nextGaussian()*0.1;
             }
         }
     }
@@ -98,10 +267,10 @@ public class ANN implements Serializable {
         
         // calculate activations of units in all following layers
         for(int layer = FIRST_HIDDEN_LAYER; layer <= OUTPUT_LAYER; layer++) {
+            final int m = size(layer-1);
             for(int j = nonBiasUnit(layer); j < size(layer); j++) {
-                double x = 0;
-                for(int i = 0; i < size(layer-1); i++)
-                    x += w[layer][j][i] * y[layer-1][i];
+                double x = VectorMath.dotProduct(
+                        w[layer], j*m, y[layer-1], 0, m);
                 y[layer][j] = sigmoid(x);
             }
         }
@@ -121,24 +290,25 @@ public class ANN implements Serializable {
             delta[OUTPUT_LAYER][k] = (y_k - d[k]) * sigmoidDerivative(y_k);
         }
         
-        // back-propagate error to hidden units
+        // back-propagate error to hidden units, adding whole weight rows
+        // rather than walking down the columns of the weight matrix
         for(int layer  = LAST_HIDDEN_LAYER;
                 layer >= FIRST_HIDDEN_LAYER; layer--) {
-            for(int j = nonBiasUnit(layer); j < size(layer); j++) {
-                double sum = 0;
-                for(int k = nonBiasUnit(layer+1); k < size(layer+1); k++)
-                    sum += w[layer+1][k][j] * delta[layer+1][k];
-                delta[layer][j] = sigmoidDerivative(y[layer][j]) * sum;
-            }
+            final int n = size(layer);
+            Arrays.fill(delta[layer], 0);
+            for(int k = nonBiasUnit(layer+1); k < size(layer+1); k++)
+                VectorMath.addScaled(w[layer+1], k*n, delta[layer+1][k],
+                        delta[layer], 0, n);
+            for(int j = nonBiasUnit(layer); j < n; j++)
+                delta[layer][j] *= sigmoidDerivative(y[layer][j]);
         }
         
         // perform gradient descent
         for(int layer = FIRST_HIDDEN_LAYER; layer <= OUTPUT_LAYER; layer++) {
-            for(int j = nonBiasUnit(layer); j < size(layer); j++) {
-                for(int i = 0; i < size(layer-1); i++) {
-                    w[layer][j][i] -= eta * delta[layer][j] * y[layer-1][i];
-                }
-            }
+            final int m = size(layer-1);
+            for(int j = nonBiasUnit(layer); j < size(layer); j++)
+                VectorMath.addScaled(y[layer-1], 0, -eta * delta[layer][j],
+                        w[layer], j*m, m);
         }
     }
     
@@ -163,6 +333,337 @@ public class ANN implements Serializable {
         }
     }
     
+    /**
+     * Train the network with mini-batch back-propagation. Each iteration
+     * draws batchSize random samples and takes one gradient descent step
+     * along their mean gradient.
+     * 
+     * @param inputs     a list of input vectors
+     * @param outputs    a list of corresponding output vectors
+     * @param n          the number of training iterations (batches)
+     * @param eta        the learning rate
+     * @param batchSize  the number of samples in each batch
+     */
+    public void train(double[][] inputs, double[][] outputs,
+            int n, double eta, int batchSize) {
+        int[] samples = new int[batchSize];
+        for(int i = 0; i < n; i++) {
+            for(int b = 0; b < batchSize; b++)
+                samples[b] = random.nextInt(inputs.length);
+            trainBatch(inputs, outputs, samples, eta);
+        }
+    }
+    
+    /**
+     * Perform a single iteration of mini-batch back-propagation, taking one
+     * gradient descent step along the mean gradient of the given samples.
+     * 
+     * @param inputs   a list of input vectors
+     * @param outputs  a list of corresponding output vectors
+     * @param samples  the indices of the samples in the batch
+     * @param eta      the learning rate
+     */
+    public void trainBatch(double[][] inputs, double[][] outputs,
+            int[] samples, double eta) {
+        final int count = samples.length;
+        if(batch == null)
+            batch = new Batch(count);
+        gradient(batch, inputs, outputs, samples, 0, count);
+        update(batch.grad, eta / count);
+    }
+    
+    /**
+     * Train the network with mini-batch back-propagation on several
+     * threads, until the given number of iterations have been performed or
+     * one of the stopping conditions in the options is met.
+     * 
+     * @param inputs   a list of input vectors
+     * @param outputs  a list of corresponding output vectors
+     * @param n        the maximum number of training iterations (batches),
+     *                 shared between the workers in Hogwild mode
+     * @param eta      the (initial) learning rate
+     * @param options  the training settings
+     * @return         statistics describing the training run
+     */
+    public Result train(final double[][] inputs, final double[][] outputs,
+            long n, final double eta, final Options options) {
+        final long startTime = System.currentTimeMillis();
+        final int numWorkers = Math.max(1, options.numThreads),
+                  batchSize = options.batchSize;
+        final Random random = new Random(options.seed);
+        final AtomicLong step = new AtomicLong();
+        final long[] iterations = new long[numWorkers];
+        final int[] samples = new int[batchSize];
+        final Batch[] batches = new Batch[numWorkers];
+        if(options.optimizer != null)
+            // allocate the optimizer's state before the workers start
+            options.optimizer.init(w);
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int k = 0; k < numWorkers; k++) {
+            final int worker = k;
+            if(options.mode == Mode.HOGWILD) {
+                final Random workerRandom = new Random(random.nextLong());
+                final Batch buffers = batches[k] = new Batch(batchSize);
+                final int[] workerSamples = new int[batchSize];
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        // the weights are shared without locking, so
+                        // workers may overwrite each other's updates
+                        for(long i = 0; i < iterations[worker]; i++) {
+                            for(int b = 0; b < batchSize; b++)
+                                workerSamples[b] = workerRandom.nextInt(
+                                        inputs.length);
+                            gradient(buffers, inputs, outputs, workerSamples,
+                                    0, batchSize);
+                            step(buffers.grad, batchSize, eta,
+                                    step.getAndIncrement(), options);
+                        }
+                        return null;
+                    }
+                });
+            } else {
+                // each worker computes the gradient of a fixed slice of
+                // each batch
+                final int from = batchSize * k / numWorkers,
+                          to = batchSize * (k+1) / numWorkers;
+                final Batch buffers = batches[k] = new Batch(to - from);
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        gradient(buffers, inputs, outputs, samples,
+                                from, to - from);
+                        return null;
+                    }
+                });
+            }
+        }
+        
+        List<Double> losses = new ArrayList<Double>();
+        List<Long> times = new ArrayList<Long>();
+        long done = 0, timeToTarget = -1;
+        double prevLoss = Double.POSITIVE_INFINITY;
+        final long interval = options.evaluationInterval > 0 ?
+                options.evaluationInterval : n;
+        while(done < n) {
+            final long count = Math.min(interval, n - done);
+            if(options.mode == Mode.HOGWILD) {
+                for(int k = 0; k < numWorkers; k++)
+                    iterations[k] = count / numWorkers +
+                        (k < count % numWorkers ? 1 : 0);
+                TaskUtil.run(tasks, options.executor);
+            } else {
+                for(long i = 0; i < count; i++) {
+                    for(int b = 0; b < batchSize; b++)
+                        samples[b] = random.nextInt(inputs.length);
+                    TaskUtil.run(tasks, options.executor);
+                    // sum the gradients in a fixed order, for
+                    // reproducibility
+                    for(int k = 1; k < numWorkers; k++)
+                        for(int layer = FIRST_HIDDEN_LAYER;
+                                layer <= OUTPUT_LAYER; layer++)
+                            VectorMath.addScaled(batches[k].grad[layer], 0, 1,
+                                    batches[0].grad[layer], 0,
+                                    batches[0].grad[layer].length);
+                    step(batches[0].grad, batchSize, eta,
+                            step.getAndIncrement(), options);
+                }
+            }
+            done += count;
+            if(options.evaluationInterval > 0 || done == n) {
+                final double loss = loss(inputs, outputs);
+                final long time = System.currentTimeMillis() - startTime;
+                losses.add(loss);
+                times.add(time);
+                if(loss <= options.targetLoss) {
+                    timeToTarget = time;
+                    break;
+                }
+                if(options.tolerance > 0 &&
+                        prevLoss - loss < options.tolerance * prevLoss)
+                    break; // converged
+                prevLoss = loss;
+            }
+        }
+        Result result = new Result(done,
+                System.currentTimeMillis() - startTime,
+                losses, times, timeToTarget);
+        return result;
+    }
+    
+    /**
+     * Take a step along the given summed gradients, using the optimizer and
+     * learning rate schedule in the options.
+     */
+    private void step(double[][] grad, int count, double eta, long step,
+            Options options) {
+        final double rate = options.schedule == null ? eta :
+            options.schedule.rate(eta, step);
+        if(options.optimizer == null)
+            update(grad, rate / count);
+        else
+            options.optimizer.update(w, grad, 1.0 / count, rate);
+    }
+    
+    /**
+     * Calculate the mean squared error of the network over the given
+     * samples, $E = \frac{1}{2N} \sum_n \sum_k (y_k - d_k)^2$.
+     * 
+     * @param inputs   a list of input vectors
+     * @param outputs  a list of corresponding output vectors
+     * @return         the error
+     */
+    public double loss(double[][] inputs, double[][] outputs) {
+        final int blockSize = BLOCK_SIZE * 8, s = size(OUTPUT_LAYER);
+        if(batch == null)
+            batch = new Batch(blockSize);
+        batch.allocate(blockSize);
+        int[] samples = new int[blockSize];
+        double sum = 0;
+        for(int from = 0; from < inputs.length; from += blockSize) {
+            final int count = Math.min(blockSize, inputs.length - from);
+            for(int b = 0; b < count; b++)
+                samples[b] = from + b;
+            feedForward(batch, inputs, samples, 0, count);
+            final double[] y = batch.y[OUTPUT_LAYER];
+            for(int b = 0; b < count; b++) {
+                final double[] d = outputs[from + b];
+                for(int k = 0; k < s; k++) {
+                    final double e = y[b*s + k] - d[k];
+                    sum += e*e;
+                }
+            }
+        }
+        return sum / (2 * inputs.length);
+    }
+    
+    /**
+     * Sum the weight gradients of the given samples into batch.grad.
+     * 
+     * @param batch    the buffers to use
+     * @param inputs   a list of input vectors
+     * @param outputs  a list of corresponding output vectors
+     * @param samples  the indices of the samples
+     * @param from     the position of the first sample to use
+     * @param count    the number of samples to use
+     */
+    private void gradient(Batch batch, double[][] inputs, double[][] outputs,
+            int[] samples, int from, int count) {
+        batch.allocate(count);
+        feedForward(batch, inputs, samples, from, count);
+        backProp(batch, outputs, samples, from, count);
+    }
+    
+    /**
+     * Take a gradient descent step.
+     * 
+     * @param grad  the weight gradients
+     * @param rate  the step size
+     */
+    private void update(double[][] grad, double rate) {
+        for(int layer = FIRST_HIDDEN_LAYER; layer <= OUTPUT_LAYER; layer++) {
+            final int m = size(layer-1);
+            VectorMath.addScaled(grad[layer], nonBiasUnit(layer)*m,
+                    -rate, w[layer], nonBiasUnit(layer)*m,
+                    (size(layer) - nonBiasUnit(layer)) * m);
+        }
+    }
+    
+    /**
+     * Update the mini-batch activations for the given samples. The samples
+     * are processed in blocks, so that each weight row is applied to a
+     * whole block of activations while both are in cache.
+     */
+    private void feedForward(Batch batch, double[][] inputs, int[] samples,
+            int from, int count) {
+        final int s = size(INPUT_LAYER);
+        final double[] y0 = batch.y[INPUT_LAYER];
+        for(int b = 0; b < count; b++) {
+            y0[b*s] = 1; // bias unit
+            System.arraycopy(inputs[samples[from + b]], 0, y0, b*s + 1, s-1);
+        }
+        for(int layer = FIRST_HIDDEN_LAYER; layer <= OUTPUT_LAYER; layer++) {
+            final int m = size(layer-1), n = size(layer);
+            final double[] w_l = w[layer], in = batch.y[layer-1],
+                           out = batch.y[layer];
+            for(int b0 = 0; b0 < count; b0 += BLOCK_SIZE) {
+                final int b1 = Math.min(b0 + BLOCK_SIZE, count);
+                for(int j = nonBiasUnit(layer); j < n; j++)
+                    for(int b = b0; b < b1; b++)
+                        out[b*n + j] = sigmoid(
+                                VectorMath.dotProduct(w_l, j*m, in, b*m, m));
+                if(layer != OUTPUT_LAYER)
+                    for(int b = b0; b < b1; b++)
+                        out[b*n] = 1; // bias unit
+            }
+        }
+    }
+    
+    /**
+     * Calculate the mini-batch delta values and the summed weight gradients
+     * for the given samples, after {@link #feedForward(Batch, double[][],
+     * int[], int, int)}.
+     */
+    private void backProp(Batch batch, double[][] outputs, int[] samples,
+            int from, int count) {
+        // calculate error of output units
+        final int s = size(OUTPUT_LAYER);
+        final double[] yOut = batch.y[OUTPUT_LAYER],
+                       deltaOut = batch.delta[OUTPUT_LAYER];
+        for(int b = 0; b < count; b++) {
+            final double[] d = outputs[samples[from + b]];
+            for(int k = 0; k < s; k++) {
+                final double y_k = yOut[b*s + k];
+                deltaOut[b*s + k] = (y_k - d[k]) * sigmoidDerivative(y_k);
+            }
+        }
+        
+        // back-propagate error to hidden units, adding whole weight rows
+        // rather than walking down the columns of the weight matrix
+        for(int layer  = LAST_HIDDEN_LAYER;
+                layer >= FIRST_HIDDEN_LAYER; layer--) {
+            final int n = size(layer), next = size(layer+1);
+            final double[] y_l = batch.y[layer],
+                           delta_l = batch.delta[layer],
+                           deltaNext = batch.delta[layer+1];
+            Arrays.fill(delta_l, 0, count*n, 0);
+            for(int b = 0; b < count; b++) {
+                for(int k = nonBiasUnit(layer+1); k < next; k++)
+                    VectorMath.addScaled(w[layer+1], k*n,
+                            deltaNext[b*next + k], delta_l, b*n, n);
+                for(int j = nonBiasUnit(layer); j < n; j++)
+                    delta_l[b*n + j] *= sigmoidDerivative(y_l[b*n + j]);
+            }
+        }
+        
+        // sum the gradients over the batch, a block of samples at a time
+        for(int layer = FIRST_HIDDEN_LAYER; layer <= OUTPUT_LAYER; layer++) {
+            final int m = size(layer-1), n = size(layer);
+            final double[] in = batch.y[layer-1],
+                           delta_l = batch.delta[layer],
+                           g = batch.grad[layer];
+            Arrays.fill(g, 0);
+            for(int b0 = 0; b0 < count; b0 += BLOCK_SIZE) {
+                final int b1 = Math.min(b0 + BLOCK_SIZE, count);
+                for(int j = nonBiasUnit(layer); j < n; j++)
+                    for(int b = b0; b < b1; b++)
+                        VectorMath.addScaled(in, b*m, delta_l[b*n + j],
+                                g, j*m, m);
+            }
+        }
+    }
+    
+    /**
+     * Create an immutable, thread-safe inference view of the network with
+     * a copy of its current weights.
+     * 
+     * @return  the predictor
+     */
+    public Predictor predictor() {
+        int[] sizes = new int[NUM_LAYERS];
+        for(int layer = INPUT_LAYER; layer <= OUTPUT_LAYER; layer++)
+            sizes[layer] = size(layer);
+        return new Predictor(w, sizes);
+    }
+    
     /**
      * Get the activations of the non-bias units in the given layer.
      * 
@@ -174,14 +675,29 @@ public class ANN implements Serializable {
     }
     
     /**
-     * Get the weights of the incoming connections to the given unit.
+     * Get a copy of the weights of the incoming connections to the given
+     * unit.
      * 
      * @param layer  the layer the unit is in
      * @param j      the index of the unit
      * @return       the array of weights
      */
     public double[] getWeights(int layer, int j) {
-        return w[layer][j];
+        final int m = size(layer-1);
+        return Arrays.copyOfRange(w[layer], j*m, (j+1)*m);
+    }
+    
+    /**
+     * Get a view of the weights of the incoming connections to the given
+     * unit, which reads and writes the network's weights directly.
+     * 
+     * @param layer  the layer the unit is in
+     * @param j      the index of the unit
+     * @return       the weights
+     */
+    public DoubleBuffer getWeightsView(int layer, int j) {
+        final int m = size(layer-1);
+        return DoubleBuffer.wrap(w[layer], j*m, m).slice();
     }
     
     /**
@@ -0,0 +1,154 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.ann;
+
+import cc.vidr.jclassification.util.VectorMath;
+
+/**
+ * An immutable inference view of a trained ANN. Unlike the ANN itself,
+ * which stores its activations in instance fields, a Predictor keeps all
+ * per-call state in a {@link Scratch} object, so it can be used from many
+ * threads at once. The weights are copied when the Predictor is created,
+ * so later training of the ANN does not affect it.
+ * 
+ * @author  David A Roberts
+ */
+public class Predictor {
+    /** Connection weights [layer of j][j*size(layer-1) + i] */
+    private final double[][] w;
+    /** The number of units in each layer, including bias units */
+    private final int[] sizes;
+    /** Scratch buffers for callers that do not supply their own */
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        protected Scratch initialValue() {
+            return newScratch();
+        }
+    };
+    
+    /**
+     * Per-call activation buffers. A Scratch object may be reused for any
+     * number of predictions, but by only one thread at a time.
+     */
+    public static class Scratch {
+        /** Unit activations [layer][j] */
+        private final double[][] y;
+        
+        private Scratch(int[] sizes) {
+            y = new double[sizes.length][];
+            for(int layer = 0; layer < sizes.length; layer++) {
+                y[layer] = new double[sizes[layer]];
+                if(layer != sizes.length - 1)
+                    y[layer][0] = 1; // bias unit
+            }
+        }
+    }
+    
+    /**
+     * Create a predictor from a copy of the given weights.
+     * 
+     * @param w      connection weights [layer of j][j*size(layer-1) + i],
+     *               as stored by ANN
+     * @param sizes  the number of units in each layer, including bias units
+     */
+    Predictor(double[][] w, int[] sizes) {
+        this.sizes = sizes.clone();
+        this.w = new double[w.length][];
+        for(int layer = 1; layer < w.length; layer++)
+            this.w[layer] = w[layer].clone();
+    }
+    
+    /**
+     * Create a new set of scratch buffers for this predictor.
+     * 
+     * @return  the scratch buffers
+     */
+    public Scratch newScratch() {
+        return new Scratch(sizes);
+    }
+    
+    /**
+     * Calculate the output of the network using the given scratch buffers.
+     * No memory is allocated.
+     * 
+     * @param input    the input vector
+     * @param scratch  the scratch buffers, which must have been created by
+     *                 this predictor
+     * @return         the output vector, which is stored in the scratch
+     *                 buffers and so is only valid until they are reused
+     */
+    public double[] predict(double[] input, Scratch scratch) {
+        final double[][] y = scratch.y;
+        final int outputLayer = sizes.length - 1;
+        System.arraycopy(input, 0, y[0], 1, sizes[0] - 1);
+        for(int layer = 1; layer <= outputLayer; layer++) {
+            final double[] wl = w[layer], in = y[layer-1], out = y[layer];
+            final int m = sizes[layer-1];
+            for(int j = nonBiasUnit(layer); j < sizes[layer]; j++)
+                out[j] = sigmoid(VectorMath.dotProduct(wl, j*m, in, 0, m));
+        }
+        return y[outputLayer];
+    }
+    
+    /**
+     * Calculate the output of the network into the given array, using
+     * scratch buffers belonging to the current thread. No memory is
+     * allocated after the first call on each thread; callers running many
+     * short-lived (e.g. virtual) threads should supply their own
+     * {@link Scratch} instead.
+     * 
+     * @param input   the input vector
+     * @param output  the array to store the output vector in
+     * @return        the output array
+     */
+    public double[] predict(double[] input, double[] output) {
+        double[] y = predict(input, scratch.get());
+        System.arraycopy(y, 0, output, 0, y.length);
+        return output;
+    }
+    
+    /**
+     * Return the number of input units.
+     */
+    public int inputSize() {
+        return sizes[0] - 1;
+    }
+    
+    /**
+     * Return the number of output units.
+     */
+    public int outputSize() {
+        return sizes[sizes.length - 1];
+    }
+    
+    private static double sigmoid(double x) {
+        return 1.0 / (1.0 + Math.exp(-x));
+    }
+    
+    /**
+     * Returns the index of the first non-bias unit in the given layer.
+     */
+    private int nonBiasUnit(int layer) {
+        return layer == sizes.length - 1 ? 0 : 1;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.ann.optimizer;
+
+/**
+ * Adam (Kingma and Ba, 2014), which keeps running averages of both the
+ * gradient and its square for each weight, corrected for their bias
+ * towards zero in the early steps.
+ * 
+ * @author  David A Roberts
+ */
+public class Adam extends Optimizer {
+    /** The decay rates of the running averages */
+    private final double beta1, beta2;
+    /** A small constant to avoid division by zero */
+    private final double epsilon;
+    /** The running averages of the gradient and square gradient */
+    private double[][] m, v;
+    /** The powers of beta1 and beta2 at the current step */
+    private double beta1t = 1, beta2t = 1;
+    
+    /**
+     * Create an Adam optimizer with the usual settings.
+     */
+    public Adam() {
+        this(0.9, 0.999, 1e-8);
+    }
+    
+    /**
+     * Create an Adam optimizer.
+     * 
+     * @param beta1    the decay rate of the average gradient
+     * @param beta2    the decay rate of the average square gradient
+     * @param epsilon  a small constant to avoid division by zero
+     */
+    public Adam(double beta1, double beta2, double epsilon) {
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+    
+    public void init(double[][] w) {
+        if(m == null) {
+            m = zeros(w);
+            v = zeros(w);
+        }
+    }
+    
+    public void update(double[][] w, double[][] grad, double scale,
+            double eta) {
+        checkInit(m);
+        beta1t *= beta1;
+        beta2t *= beta2;
+        // fold both bias corrections into the step size
+        final double rate = eta * Math.sqrt(1 - beta2t) / (1 - beta1t);
+        for(int layer = 0; layer < w.length; layer++) {
+            if(w[layer] == null) continue;
+            final double[] w_l = w[layer], g = grad[layer],
+                           m_l = m[layer], v_l = v[layer];
+            for(int i = 0; i < w_l.length; i++) {
+                final double g_i = scale * g[i];
+                m_l[i] = beta1 * m_l[i] + (1 - beta1) * g_i;
+                v_l[i] = beta2 * v_l[i] + (1 - beta2) * g_i * g_i;
+                w_l[i] -= rate * m_l[i] / (Math.sqrt(v_l[i]) + epsilon);
+            }
+        }
+    }
+}
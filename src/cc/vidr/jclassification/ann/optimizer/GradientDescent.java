@@ -0,0 +1,43 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.ann.optimizer;
+
+/**
+ * Plain gradient descent, which moves each weight against its gradient by
+ * a fixed multiple of the learning rate.
+ * 
+ * @author  David A Roberts
+ */
+public class GradientDescent extends Optimizer {
+    public void update(double[][] w, double[][] grad, double scale,
+            double eta) {
+        final double rate = eta * scale;
+        for(int layer = 0; layer < w.length; layer++) {
+            if(w[layer] == null) continue;
+            final double[] w_l = w[layer], g = grad[layer];
+            for(int i = 0; i < w_l.length; i++)
+                w_l[i] -= rate * g[i];
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.ann.optimizer;
+
+/**
+ * Gradient descent with momentum, which accumulates a velocity for each
+ * weight so that steps in a consistent direction grow larger. Optionally
+ * uses Nesterov's accelerated gradient, which corrects the step by
+ * looking ahead along the velocity.
+ * 
+ * @author  David A Roberts
+ */
+public class Momentum extends Optimizer {
+    /** The fraction of the velocity kept at each step */
+    private final double mu;
+    /** Use Nesterov's accelerated gradient? */
+    private final boolean nesterov;
+    /** The velocity of each weight */
+    private double[][] v;
+    
+    /**
+     * Create a classical momentum optimizer.
+     * 
+     * @param mu  the fraction of the velocity kept at each step (e.g. 0.9)
+     */
+    public Momentum(double mu) {
+        this(mu, false);
+    }
+    
+    /**
+     * Create a momentum optimizer.
+     * 
+     * @param mu        the fraction of the velocity kept at each step
+     * @param nesterov  use Nesterov's accelerated gradient?
+     */
+    public Momentum(double mu, boolean nesterov) {
+        this.mu = mu;
+        this.nesterov = nesterov;
+    }
+    
+    public void init(double[][] w) {
+        if(v == null)
+            v = zeros(w);
+    }
+    
+    public void update(double[][] w, double[][] grad, double scale,
+            double eta) {
+        checkInit(v);
+        final double rate = eta * scale;
+        for(int layer = 0; layer < w.length; layer++) {
+            if(w[layer] == null) continue;
+            final double[] w_l = w[layer], g = grad[layer], v_l = v[layer];
+            for(int i = 0; i < w_l.length; i++) {
+                final double prev = v_l[i];
+                v_l[i] = mu * prev - rate * g[i];
+                // Nesterov: w += v + mu*(v - prev), the step taken from
+                // the looked-ahead position
+                w_l[i] += nesterov ? (1 + mu) * v_l[i] - mu * prev : v_l[i];
+            }
+        }
+    }
+}
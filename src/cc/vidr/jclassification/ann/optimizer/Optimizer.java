@@ -0,0 +1,82 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.ann.optimizer;
+
+/**
+ * A rule for updating the weights of a network from their gradients.
+ * Weights and any per-weight state are stored as one flat array per
+ * layer, as in the network itself.
+ * 
+ * Optimizers with state must only be used to train one network. The
+ * state is allocated by {@link #init} before training starts. When
+ * training in Hogwild mode, the state is shared between the workers
+ * without locking, just like the weights.
+ * 
+ * @author  David A Roberts
+ */
+public abstract class Optimizer {
+    /**
+     * Take a step to reduce the error.
+     * 
+     * @param w      the weights of each layer (null for the input layer)
+     * @param grad   the summed gradients, in the same layout as w
+     * @param scale  the factor to scale the gradients by (usually one over
+     *               the batch size)
+     * @param eta    the learning rate
+     */
+    public abstract void update(double[][] w, double[][] grad, double scale,
+            double eta);
+    
+    /**
+     * Prepare to update the given weights. This is called by the network
+     * on the thread that starts training, before any updates, so that any
+     * per-weight state is allocated once and is visible to every worker.
+     * Calling it again keeps the existing state, so that training can be
+     * continued.
+     * 
+     * @param w  the weights of each layer (null for the input layer)
+     */
+    public void init(double[][] w) {
+    }
+    
+    /**
+     * Check that the given state has been allocated by {@link #init}.
+     */
+    protected static void checkInit(double[][] state) {
+        if(state == null)
+            throw new IllegalStateException(
+                    "init must be called before update");
+    }
+    
+    /**
+     * Create zeroed state arrays in the same layout as the given weights.
+     */
+    protected static double[][] zeros(double[][] w) {
+        double[][] state = new double[w.length][];
+        for(int layer = 0; layer < w.length; layer++)
+            if(w[layer] != null)
+                state[layer] = new double[w[layer].length];
+        return state;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.ann.optimizer;
+
+/**
+ * RMSProp, which divides each gradient by a running average of its recent
+ * magnitude, so that every weight moves at a similar rate.
+ * 
+ * @author  David A Roberts
+ */
+public class RMSProp extends Optimizer {
+    /** The decay rate of the running average */
+    private final double rho;
+    /** A small constant to avoid division by zero */
+    private final double epsilon;
+    /** The running average of the square gradient of each weight */
+    private double[][] s;
+    
+    /**
+     * Create an RMSProp optimizer with the usual settings.
+     */
+    public RMSProp() {
+        this(0.9, 1e-8);
+    }
+    
+    /**
+     * Create an RMSProp optimizer.
+     * 
+     * @param rho      the decay rate of the running average
+     * @param epsilon  a small constant to avoid division by zero
+     */
+    public RMSProp(double rho, double epsilon) {
+        this.rho = rho;
+        this.epsilon = epsilon;
+    }
+    
+    public void init(double[][] w) {
+        if(s == null)
+            s = zeros(w);
+    }
+    
+    public void update(double[][] w, double[][] grad, double scale,
+            double eta) {
+        checkInit(s);
+        for(int layer = 0; layer < w.length; layer++) {
+            if(w[layer] == null) continue;
+            final double[] w_l = w[layer], g = grad[layer], s_l = s[layer];
+            for(int i = 0; i < w_l.length; i++) {
+                final double g_i = scale * g[i];
+                s_l[i] = rho * s_l[i] + (1 - rho) * g_i * g_i;
+                w_l[i] -= eta * g_i / (Math.sqrt(s_l[i]) + epsilon);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.ann.optimizer;
+
+/**
+ * A learning rate schedule, which varies the learning rate as training
+ * progresses.
+ * 
+ * @author  David A Roberts
+ */
+public abstract class Schedule {
+    /**
+     * Return the learning rate to use at the given step.
+     * 
+     * @param eta   the initial learning rate
+     * @param step  the number of steps taken so far
+     * @return      the learning rate
+     */
+    public abstract double rate(double eta, long step);
+    
+    /**
+     * A constant learning rate.
+     */
+    public static Schedule constant() {
+        return new Schedule() {
+            public double rate(double eta, long step) {
+                return eta;
+            }
+        };
+    }
+    
+    /**
+     * Multiply the learning rate by the given factor every interval steps.
+     * 
+     * @param factor    the factor (e.g. 0.5)
+     * @param interval  the number of steps between reductions
+     */
+    public static Schedule step(final double factor, final long interval) {
+        if(factor <= 0)
+            throw new IllegalArgumentException("factor must be positive");
+        if(interval <= 0)
+            throw new IllegalArgumentException("interval must be positive");
+        return new Schedule() {
+            public double rate(double eta, long step) {
+                return eta * Math.pow(factor, step / interval);
+            }
+        };
+    }
+    
+    /**
+     * Decay the learning rate exponentially: eta * decay^step.
+     * 
+     * @param decay  the factor to reduce the learning rate by at each step
+     *               (e.g. 0.9999)
+     */
+    public static Schedule exponential(final double decay) {
+        if(decay <= 0)
+            throw new IllegalArgumentException("decay must be positive");
+        return new Schedule() {
+            public double rate(double eta, long step) {
+                return eta * Math.pow(decay, step);
+            }
+        };
+    }
+    
+    /**
+     * Decay the learning rate in inverse proportion to the number of steps:
+     * eta / (1 + decay*step).
+     * 
+     * @param decay  the rate of decay
+     */
+    public static Schedule inverse(final double decay) {
+        if(decay < 0)
+            throw new IllegalArgumentException("decay must be non-negative");
+        return new Schedule() {
+            public double rate(double eta, long step) {
+                return eta / (1 + decay * step);
+            }
+        };
+    }
+}
@@ -0,0 +1,165 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.SparseVector;
+
+/**
+ * A compact binary file format for data sets, which can be loaded by
+ * memory-mapping the file rather than parsing it.
+ * 
+ * All values are little-endian. The file begins with a 32 byte header:
+ * <pre>
+ *   int    magic ("JCDS")
+ *   int    version (1)
+ *   int    layout (0 = dense, 1 = sparse)
+ *   int    number of rows
+ *   int    number of columns
+ *   int    reserved (0)
+ *   long   number of non-zero elements (sparse layout only)
+ * </pre>
+ * The dense layout is followed by rows*cols doubles in row-major order,
+ * then one int label per row. The sparse layout is in compressed sparse
+ * row (CSR) form: rows+1 long row offsets, nnz double values, nnz int
+ * column indices, then one int label per row. Doubles are therefore
+ * always 8-byte aligned. The vector layouts are implemented by
+ * {@link BinaryFormat}.
+ * 
+ * Dense rows are returned as BufferVectors reading directly from the
+ * mapped file; sparse rows are copied into SparseVectors with bulk reads.
+ * 
+ * @author  David A Roberts
+ */
+public class BinaryDataset {
+    private static final int MAGIC = 0x5344434a; // "JCDS" little-endian
+    private static final int VERSION = 1;
+    private static final int DENSE = 0, SPARSE = 1;
+    private static final int HEADER_SIZE = 32;
+    
+    /**
+     * Write a data set to a file. If every input vector is sparse, the
+     * sparse layout is used; otherwise the vectors must all be dense
+     * vectors of the same size, and the dense layout is used.
+     * 
+     * @param data  the data set
+     * @param file  the file to write to
+     * @throws IOException  if the file cannot be written
+     */
+    public static void write(Dataset data, File file) throws IOException {
+        boolean sparse = true;
+        for(DataVector x : data.x)
+            if(!(x instanceof SparseVector))
+                sparse = false;
+        BinaryFormat.Output out = new BinaryFormat.Output(file);
+        try {
+            if(sparse) {
+                writeHeader(out, SPARSE, data.size(),
+                        BinaryFormat.maxSize(data.x),
+                        BinaryFormat.nonZeros(data.x));
+                BinaryFormat.writeSparse(out, data.x);
+            } else {
+                final int cols = data.size() == 0 ? 0 : data.x[0].size();
+                writeHeader(out, DENSE, data.size(), cols, 0);
+                BinaryFormat.writeDense(out, data.x, cols);
+            }
+            for(int label : data.y)
+                out.writeInt(label);
+        } finally {
+            out.close();
+        }
+    }
+    
+    private static void writeHeader(BinaryFormat.Output out, int layout,
+            int rows, int cols, long nnz) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(layout);
+        out.writeInt(rows);
+        out.writeInt(cols);
+        out.writeInt(0);
+        out.writeLong(nnz);
+    }
+    
+    /**
+     * Load a data set by memory-mapping the given file.
+     * 
+     * @param file  the file to load
+     * @return      the data set
+     * @throws IOException  if the file cannot be read or is not valid
+     */
+    public static Dataset map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // mappings remain valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = BinaryFormat.map(channel, 0, HEADER_SIZE);
+            if(header.getInt() != MAGIC)
+                throw new IOException("not a binary data set: " + file);
+            if(header.getInt() != VERSION)
+                throw new IOException("unsupported version: " + file);
+            final int layout = header.getInt();
+            final int rows = header.getInt(), cols = header.getInt();
+            header.getInt();
+            final long nnz = header.getLong();
+            if(layout == DENSE)
+                return mapDense(channel, rows, cols);
+            else if(layout == SPARSE)
+                return mapSparse(channel, rows, nnz);
+            throw new IOException("unknown layout: " + file);
+        } finally {
+            raf.close();
+        }
+    }
+    
+    private static Dataset mapDense(FileChannel channel, int rows, int cols)
+            throws IOException {
+        DataVector[] x =
+            BinaryFormat.mapDense(channel, HEADER_SIZE, rows, cols);
+        int[] y = readLabels(channel, HEADER_SIZE + 8L * rows * cols, rows);
+        return new Dataset(x, y);
+    }
+    
+    private static Dataset mapSparse(FileChannel channel, int rows, long nnz)
+            throws IOException {
+        final long labelsStart = HEADER_SIZE + 8L * (rows + 1) + 12L * nnz;
+        DataVector[] x =
+            BinaryFormat.mapSparse(channel, HEADER_SIZE, rows, nnz);
+        int[] y = readLabels(channel, labelsStart, rows);
+        return new Dataset(x, y);
+    }
+    
+    private static int[] readLabels(FileChannel channel, long start, int rows)
+            throws IOException {
+        int[] y = new int[rows];
+        BinaryFormat.map(channel, start, 4L * rows).asIntBuffer().get(y);
+        return y;
+    }
+}
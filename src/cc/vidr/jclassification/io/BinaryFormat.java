@@ -0,0 +1,239 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+package cc.vidr.jclassification.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import cc.vidr.jclassification.svm.vector.BufferVector;
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.SparseVector;
+
+/**
+ * The vector layouts shared by {@link BinaryDataset} and
+ * {@link cc.vidr.jclassification.svm.BinaryModel}, so that both formats
+ * store vectors identically.
+ * 
+ * All values are little-endian. The dense layout is rows*cols doubles in
+ * row-major order. The sparse layout is in compressed sparse row (CSR)
+ * form: rows+1 long row offsets, nnz double values, then nnz int column
+ * indices.
+ * 
+ * @author  David A Roberts
+ */
+public class BinaryFormat {
+    /** The largest region that can be mapped at once */
+    private static final long MAX_MAP_SIZE = Integer.MAX_VALUE;
+    
+    private BinaryFormat() {}
+    
+    /**
+     * Return the total number of non-zero elements of the given sparse
+     * vectors.
+     */
+    public static long nonZeros(DataVector[] x) {
+        long nnz = 0;
+        for(DataVector v : x)
+            nnz += ((SparseVector) v).nonZeros();
+        return nnz;
+    }
+    
+    /**
+     * Return the size of the largest of the given vectors.
+     */
+    public static int maxSize(DataVector[] x) {
+        int cols = 0;
+        for(DataVector v : x)
+            cols = Math.max(cols, v.size());
+        return cols;
+    }
+    
+    /**
+     * Write vectors in the dense layout.
+     * 
+     * @param out   the output
+     * @param x     the vectors, which must all have the given size
+     * @param cols  the number of columns
+     * @throws IOException  if the vectors cannot be written
+     */
+    public static void writeDense(Output out, DataVector[] x, int cols)
+            throws IOException {
+        for(DataVector v : x) {
+            if(v.size() != cols)
+                throw new IllegalArgumentException(
+                        "dense vectors must all be the same size");
+            for(int j = 0; j < cols; j++)
+                out.writeDouble(v.get(j));
+        }
+    }
+    
+    /**
+     * Write vectors in the sparse layout.
+     * 
+     * @param out  the output
+     * @param x    the vectors, which must all be SparseVectors
+     * @throws IOException  if the vectors cannot be written
+     */
+    public static void writeSparse(Output out, DataVector[] x)
+            throws IOException {
+        long offset = 0;
+        out.writeLong(offset);
+        for(DataVector v : x) {
+            offset += ((SparseVector) v).nonZeros();
+            out.writeLong(offset);
+        }
+        for(DataVector v : x) {
+            SparseVector s = (SparseVector) v;
+            for(int p = 0; p < s.nonZeros(); p++)
+                out.writeDouble(s.value(p));
+        }
+        for(DataVector v : x) {
+            SparseVector s = (SparseVector) v;
+            for(int p = 0; p < s.nonZeros(); p++)
+                out.writeInt(s.index(p));
+        }
+    }
+    
+    /**
+     * Map vectors stored in the dense layout as BufferVectors reading
+     * directly from the file.
+     * 
+     * @param channel  the file
+     * @param start    the position of the first row
+     * @param rows     the number of rows
+     * @param cols     the number of columns
+     * @return         the vectors
+     * @throws IOException  if the file cannot be mapped
+     */
+    public static DataVector[] mapDense(FileChannel channel, long start,
+            int rows, int cols) throws IOException {
+        DataVector[] x = new DataVector[rows];
+        final long rowSize = 8L * cols;
+        // map as many whole rows at a time as will fit in one mapping
+        final int rowsPerMap = (int) Math.max(1,
+                Math.min(rows, MAX_MAP_SIZE / Math.max(rowSize, 1)));
+        for(int i0 = 0; i0 < rows; i0 += rowsPerMap) {
+            final int i1 = Math.min(rows, i0 + rowsPerMap);
+            DoubleBuffer block = map(channel,
+                    start + i0 * rowSize, (i1 - i0) * rowSize)
+                .asDoubleBuffer();
+            for(int i = i0; i < i1; i++) {
+                block.limit((i - i0 + 1) * cols).position((i - i0) * cols);
+                x[i] = new BufferVector(block);
+            }
+        }
+        return x;
+    }
+    
+    /**
+     * Read vectors stored in the sparse layout into SparseVectors, with
+     * bulk reads from the mapped file.
+     * 
+     * @param channel  the file
+     * @param start    the position of the row offsets
+     * @param rows     the number of rows
+     * @param nnz      the total number of non-zero elements
+     * @return         the vectors
+     * @throws IOException  if the file cannot be mapped
+     */
+    public static DataVector[] mapSparse(FileChannel channel, long start,
+            int rows, long nnz) throws IOException {
+        final long valuesStart = start + 8L * (rows + 1),
+                   indicesStart = valuesStart + 8L * nnz;
+        long[] offsets = new long[rows + 1];
+        map(channel, start, 8L * (rows + 1)).asLongBuffer().get(offsets);
+        DataVector[] x = new DataVector[rows];
+        // map blocks of rows, each spanning at most MAX_MAP_SIZE bytes
+        int i0 = 0;
+        while(i0 < rows) {
+            int i1 = i0 + 1;
+            while(i1 < rows &&
+                    8L * (offsets[i1 + 1] - offsets[i0]) <= MAX_MAP_SIZE)
+                i1++;
+            final long first = offsets[i0], count = offsets[i1] - first;
+            DoubleBuffer values =
+                map(channel, valuesStart + 8*first, 8*count).asDoubleBuffer();
+            IntBuffer indices =
+                map(channel, indicesStart + 4*first, 4*count).asIntBuffer();
+            for(int i = i0; i < i1; i++) {
+                final int n = (int) (offsets[i+1] - offsets[i]);
+                double[] v = new double[n];
+                int[] j = new int[n];
+                values.get(v);
+                indices.get(j);
+                x[i] = new SparseVector(j, v);
+            }
+            i0 = i1;
+        }
+        return x;
+    }
+    
+    /**
+     * Map the given region of a file as a little-endian buffer.
+     * 
+     * @throws IOException  if the region extends past the end of the file
+     */
+    public static ByteBuffer map(FileChannel channel, long start, long size)
+            throws IOException {
+        if(start + size > channel.size())
+            throw new IOException("file is truncated");
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, size)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * A buffered little-endian output stream.
+     */
+    public static class Output {
+        private final DataOutputStream out;
+        
+        public Output(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), 1 << 16));
+        }
+        
+        public void writeInt(int v) throws IOException {
+            out.writeInt(Integer.reverseBytes(v));
+        }
+        
+        public void writeLong(long v) throws IOException {
+            out.writeLong(Long.reverseBytes(v));
+        }
+        
+        public void writeDouble(double v) throws IOException {
+            writeLong(Double.doubleToRawLongBits(v));
+        }
+        
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.io;
+
+import cc.vidr.jclassification.svm.SVM;
+import cc.vidr.jclassification.svm.vector.DataVector;
+
+/**
+ * A set of labelled examples, as read from a file.
+ * 
+ * @author  David A Roberts
+ */
+public class Dataset {
+    /** The input vectors */
+    public final DataVector[] x;
+    /** The target classes */
+    public final int[] y;
+    
+    public Dataset(DataVector[] x, int[] y) {
+        if(x.length != y.length)
+            throw new IllegalArgumentException(
+                    "there must be one target class per input vector");
+        this.x = x;
+        this.y = y;
+    }
+    
+    /**
+     * Return the number of examples.
+     */
+    public int size() {
+        return x.length;
+    }
+    
+    /**
+     * Add all of the examples to the given SVM.
+     * 
+     * @param svm  the SVM
+     */
+    public void addTo(SVM svm) {
+        for(int i = 0; i < x.length; i++)
+            svm.add(x[i], y[i]);
+    }
+}
@@ -0,0 +1,498 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import cc.vidr.jclassification.svm.Pegasos;
+import cc.vidr.jclassification.svm.SVM;
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.RealVector;
+import cc.vidr.jclassification.svm.vector.SparseVector;
+
+/**
+ * A streaming reader for the sparse text format used by LIBSVM and
+ * SVMlight, in which each line has the form
+ * <pre>
+ *   label index:value index:value ... # comment
+ * </pre>
+ * with indices starting from 1 and increasing along the line. Indices are
+ * converted to start from 0. "qid:" tokens are ignored.
+ * 
+ * The file is read in large blocks through a FileChannel and parsed
+ * directly from the bytes, without creating a String per line or per
+ * number. A large file may be split into chunks that are parsed in
+ * parallel.
+ * 
+ * @author  David A Roberts
+ */
+public class LibSVMReader {
+    /** The size of each block read from the file */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Powers of ten that can be represented exactly by a double */
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for(int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i-1] * 10;
+    }
+    
+    /** The file to read */
+    private final File file;
+    /** The size of the dense vectors to create, or 0 for sparse vectors */
+    private final int dimension;
+    
+    /**
+     * Receives the examples parsed from a file. The arrays passed to the
+     * handler are reused for each example, so must be copied if they are
+     * to be kept.
+     */
+    public interface Handler {
+        /**
+         * Handle an example.
+         * 
+         * @param label    the target class
+         * @param indices  the indices of the non-zero elements (from 0)
+         * @param values   the values of the non-zero elements
+         * @param n        the number of non-zero elements
+         */
+        void example(int label, int[] indices, double[] values, int n);
+    }
+    
+    /**
+     * Create a reader producing sparse vectors.
+     * 
+     * @param file  the file to read
+     */
+    public LibSVMReader(File file) {
+        this(file, 0);
+    }
+    
+    /**
+     * Create a reader.
+     * 
+     * @param file       the file to read
+     * @param dimension  the size of the dense vectors to create, or 0 to
+     *                   create sparse vectors
+     */
+    public LibSVMReader(File file, int dimension) {
+        this.file = file;
+        this.dimension = dimension;
+    }
+    
+    /**
+     * Parse the whole file, passing each example to the given handler.
+     * 
+     * @param handler  the handler
+     * @throws IOException  if the file cannot be read or parsed
+     */
+    public void read(Handler handler) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            parse(channel, 0, channel.size(), handler);
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Read the whole file into memory.
+     * 
+     * @return  the examples
+     * @throws IOException  if the file cannot be read or parsed
+     */
+    public Dataset read() throws IOException {
+        Builder builder = new Builder();
+        read(builder);
+        return builder.toDataset();
+    }
+    
+    /**
+     * Read the whole file into memory, parsing chunks of it in parallel.
+     * The examples are returned in the same order as they appear in the
+     * file.
+     * 
+     * @param executor   the executor to parse the chunks with
+     * @param numChunks  the number of chunks to split the file into
+     * @return           the examples
+     * @throws IOException  if the file cannot be read or parsed
+     */
+    public Dataset read(ExecutorService executor, int numChunks)
+            throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            List<Callable<Builder>> tasks = new ArrayList<Callable<Builder>>();
+            for(int k = 0; k < numChunks; k++) {
+                final long start = size * k / numChunks,
+                           end = size * (k+1) / numChunks;
+                tasks.add(new Callable<Builder>() {
+                    public Builder call() throws IOException {
+                        Builder builder = new Builder();
+                        parse(channel, start, end, builder);
+                        return builder;
+                    }
+                });
+            }
+            List<Builder> chunks = new ArrayList<Builder>(numChunks);
+            try {
+                for(Future<Builder> future : executor.invokeAll(tasks))
+                    chunks.add(future.get());
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + file);
+            } catch(ExecutionException e) {
+                if(e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+            Builder all = new Builder();
+            for(Builder chunk : chunks)
+                all.addAll(chunk);
+            return all.toDataset();
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Read the whole file, adding each example to the given SVM.
+     * 
+     * @param svm  the SVM
+     * @throws IOException  if the file cannot be read or parsed
+     */
+    public void readInto(final SVM svm) throws IOException {
+        read(new Handler() {
+            public void example(int label, int[] indices, double[] values,
+                    int n) {
+                svm.add(toVector(indices, values, n), label);
+            }
+        });
+    }
+    
+    /**
+     * Read the whole file, updating the given online trainer with each
+     * example in turn. Only one example is held in memory at a time, so
+     * this may be repeated for several passes over a file too large to
+     * load.
+     * 
+     * @param pegasos  the online trainer
+     * @throws IOException  if the file cannot be read or parsed
+     */
+    public void readInto(final Pegasos pegasos) throws IOException {
+        read(new Handler() {
+            public void example(int label, int[] indices, double[] values,
+                    int n) {
+                pegasos.update(toVector(indices, values, n), label);
+            }
+        });
+    }
+    
+    /**
+     * Read the whole file as dense input arrays and target arrays for an
+     * ANN with a single sigmoid output unit, whose target is 1 for
+     * positive labels and 0 otherwise.
+     * 
+     * @param inputs   the list to add the input arrays to
+     * @param targets  the list to add the target arrays to
+     * @throws IOException  if the file cannot be read or parsed
+     */
+    public void readInto(final List<double[]> inputs,
+            final List<double[]> targets) throws IOException {
+        if(dimension == 0)
+            throw new IllegalStateException(
+                    "the dimension must be given to read dense arrays");
+        read(new Handler() {
+            public void example(int label, int[] indices, double[] values,
+                    int n) {
+                double[] x = new double[dimension];
+                scatter(indices, values, n, x);
+                inputs.add(x);
+                targets.add(new double[] {label > 0 ? 1 : 0});
+            }
+        });
+    }
+    
+    /**
+     * Create a vector from the given elements.
+     */
+    private DataVector toVector(int[] indices, double[] values, int n) {
+        if(dimension == 0)
+            return new SparseVector(
+                    Arrays.copyOf(indices, n), Arrays.copyOf(values, n));
+        double[] x = new double[dimension];
+        scatter(indices, values, n, x);
+        return new RealVector(x);
+    }
+    
+    /**
+     * Copy the given elements into a dense array.
+     */
+    private void scatter(int[] indices, double[] values, int n, double[] x) {
+        for(int p = 0; p < n; p++) {
+            if(indices[p] >= dimension)
+                throw new IllegalArgumentException("index " + (indices[p]+1) +
+                        " exceeds the dimension " + dimension);
+            x[indices[p]] = values[p];
+        }
+    }
+    
+    /**
+     * Parse the lines beginning within the given range of bytes. If the
+     * range does not start at the beginning of the file, the partial line
+     * before it belongs to the previous range and is skipped.
+     * 
+     * @param channel  the file
+     * @param start    the first byte (inclusive)
+     * @param end      the last byte (exclusive)
+     * @param handler  the handler to pass examples to
+     * @throws IOException  if the file cannot be read or parsed
+     */
+    private void parse(FileChannel channel, long start, long end,
+            Handler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        LineParser parser = new LineParser(handler);
+        byte[] line = new byte[256];
+        int length = 0;
+        // start one byte early, so that a line beginning exactly at start
+        // is recognised as such
+        long pos = start > 0 ? start - 1 : 0;
+        long lineStart = pos;
+        boolean skipping = start > 0;
+        while(lineStart < end) {
+            buffer.clear();
+            final int read = channel.read(buffer, pos);
+            if(read <= 0) {
+                if(!skipping && length > 0)
+                    parser.parse(line, length, lineStart);
+                return;
+            }
+            final byte[] bytes = buffer.array();
+            for(int i = 0; i < read && lineStart < end; i++) {
+                final byte b = bytes[i];
+                if(b == '\n') {
+                    if(!skipping)
+                        parser.parse(line, length, lineStart);
+                    skipping = false;
+                    length = 0;
+                    lineStart = pos + i + 1;
+                } else if(!skipping) {
+                    if(length == line.length)
+                        line = Arrays.copyOf(line, 2*length);
+                    line[length++] = b;
+                }
+            }
+            pos += read;
+        }
+    }
+    
+    /**
+     * Parses individual lines, reusing its arrays between lines.
+     */
+    private class LineParser {
+        private final Handler handler;
+        private int[] indices = new int[64];
+        private double[] values = new double[64];
+        
+        LineParser(Handler handler) {
+            this.handler = handler;
+        }
+        
+        /**
+         * Parse a line and pass the example to the handler.
+         * 
+         * @param line    the bytes of the line
+         * @param length  the number of bytes
+         * @param offset  the position of the line in the file, for errors
+         */
+        void parse(byte[] line, int length, long offset) throws IOException {
+            int i = skipSpace(line, 0, length);
+            if(i == length || line[i] == '#')
+                return; // blank line or comment
+            int j = endOfToken(line, i, length);
+            final int label = (int) parseNumber(line, i, j, offset);
+            int n = 0;
+            i = skipSpace(line, j, length);
+            while(i < length && line[i] != '#') {
+                j = endOfToken(line, i, length);
+                int colon = i;
+                while(colon < j && line[colon] != ':')
+                    colon++;
+                if(colon == j)
+                    throw error("expected index:value", offset);
+                if(!(colon - i == 3 && line[i] == 'q' && line[i+1] == 'i' &&
+                        line[i+2] == 'd')) {
+                    if(n == indices.length) {
+                        indices = Arrays.copyOf(indices, 2*n);
+                        values = Arrays.copyOf(values, 2*n);
+                    }
+                    indices[n] = (int) parseNumber(line, i, colon, offset) - 1;
+                    values[n] = parseNumber(line, colon + 1, j, offset);
+                    if(indices[n] < 0)
+                        throw error("indices must start from 1", offset);
+                    n++;
+                }
+                i = skipSpace(line, j, length);
+            }
+            handler.example(label, indices, values, n);
+        }
+        
+        private int skipSpace(byte[] line, int i, int length) {
+            while(i < length && (line[i] == ' ' || line[i] == '\t' ||
+                    line[i] == '\r'))
+                i++;
+            return i;
+        }
+        
+        private int endOfToken(byte[] line, int i, int length) {
+            while(i < length && line[i] != ' ' && line[i] != '\t' &&
+                    line[i] != '\r')
+                i++;
+            return i;
+        }
+    }
+    
+    /**
+     * Parse a decimal number from the given bytes. Numbers with at most 15
+     * significant digits and small exponents are converted exactly without
+     * allocating; anything else falls back to Double.parseDouble.
+     * 
+     * @param b       the bytes
+     * @param from    the first byte of the number (inclusive)
+     * @param to      the last byte of the number (exclusive)
+     * @param offset  the position of the line in the file, for errors
+     * @return        the number
+     * @throws IOException  if the number is invalid
+     */
+    static double parseNumber(byte[] b, int from, int to, long offset)
+            throws IOException {
+        int i = from;
+        boolean negative = false;
+        if(i < to && (b[i] == '-' || b[i] == '+'))
+            negative = b[i++] == '-';
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean seenDigit = false;
+        for(; i < to && b[i] >= '0' && b[i] <= '9'; i++) {
+            seenDigit = true;
+            if(mantissa == 0 && b[i] == '0') continue; // leading zero
+            if(digits < 18) {
+                mantissa = 10*mantissa + (b[i] - '0');
+                digits++;
+            } else {
+                scale++;
+                digits++;
+            }
+        }
+        if(i < to && b[i] == '.') {
+            for(i++; i < to && b[i] >= '0' && b[i] <= '9'; i++) {
+                seenDigit = true;
+                if(mantissa == 0 && b[i] == '0') {
+                    scale--;
+                } else if(digits < 18) {
+                    mantissa = 10*mantissa + (b[i] - '0');
+                    digits++;
+                    scale--;
+                } else {
+                    digits++;
+                }
+            }
+        }
+        if(i < to && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negExp = false;
+            if(i < to && (b[i] == '-' || b[i] == '+'))
+                negExp = b[i++] == '-';
+            int exp = 0;
+            boolean seenExpDigit = false;
+            for(; i < to && b[i] >= '0' && b[i] <= '9'; i++) {
+                seenExpDigit = true;
+                if(exp < 100000) exp = 10*exp + (b[i] - '0');
+            }
+            if(!seenExpDigit)
+                i = -1; // invalid, let the fallback report it
+            scale += negExp ? -exp : exp;
+        }
+        if(i == to && seenDigit && digits <= 15 &&
+                Math.abs(scale) < POW10.length) {
+            // both the mantissa and the power of ten are exact, so the
+            // result is correctly rounded
+            double x = scale >= 0 ? mantissa * POW10[scale]
+                                  : mantissa / POW10[-scale];
+            return negative ? -x : x;
+        }
+        try {
+            return Double.parseDouble(
+                    new String(b, from, to - from, "US-ASCII"));
+        } catch(NumberFormatException e) {
+            throw error("invalid number", offset);
+        }
+    }
+    
+    private static IOException error(String message, long offset) {
+        return new IOException(message + " in line at byte " + offset);
+    }
+    
+    /**
+     * Collects examples into memory.
+     */
+    private class Builder implements Handler {
+        private final List<DataVector> x = new ArrayList<DataVector>();
+        private int[] y = new int[64];
+        
+        public void example(int label, int[] indices, double[] values, int n) {
+            example(label, toVector(indices, values, n));
+        }
+        
+        void addAll(Builder other) {
+            for(int i = 0; i < other.x.size(); i++)
+                example(other.y[i], other.x.get(i));
+        }
+        
+        private void example(int label, DataVector v) {
+            if(x.size() == y.length)
+                y = Arrays.copyOf(y, 2*y.length);
+            y[x.size()] = label;
+            x.add(v);
+        }
+        
+        Dataset toDataset() {
+            return new Dataset(x.toArray(new DataVector[x.size()]),
+                    Arrays.copyOf(y, x.size()));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import cc.vidr.jclassification.io.BinaryFormat;
+import cc.vidr.jclassification.svm.kernel.GaussianKernel;
+import cc.vidr.jclassification.svm.kernel.Kernel;
+import cc.vidr.jclassification.svm.kernel.LinearKernel;
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.RealVector;
+import cc.vidr.jclassification.svm.vector.SparseVector;
+
+/**
+ * A compact binary file format for trained SVMs, which is much smaller
+ * and faster to load than Java serialization, and does not depend on the
+ * layout of the classes.
+ * 
+ * All values are little-endian. The file begins with a 64 byte header:
+ * <pre>
+ *   int    magic ("JCSM")
+ *   int    version (1)
+ *   int    kernel (0 = linear, 1 = Gaussian)
+ *   int    layout (0 = dense, 1 = sparse, 2 = linear weights)
+ *   int    number of support vectors
+ *   int    number of columns
+ *   double kernel parameter (the variance of a Gaussian kernel)
+ *   double threshold (b)
+ *   double soft-margin parameter (C)
+ *   long   number of non-zero elements (sparse layout only)
+ *   long   reserved (0)
+ * </pre>
+ * followed by one double coefficient alpha*y per support vector, then
+ * the support vectors in the same dense or sparse (CSR) layouts as
+ * {@link cc.vidr.jclassification.io.BinaryDataset} (see
+ * {@link BinaryFormat}). A linear SVM that has been
+ * {@link SVM#compact compacted} is stored as its weight vector alone, as
+ * cols doubles.
+ * 
+ * Dense support vectors are loaded as BufferVectors reading directly from
+ * the mapped file.
+ * 
+ * @author  David A Roberts
+ */
+public class BinaryModel {
+    private static final int MAGIC = 0x4d53434a; // "JCSM" little-endian
+    private static final int VERSION = 1;
+    private static final int LINEAR = 0, GAUSSIAN = 1;
+    private static final int DENSE = 0, SPARSE = 1, WEIGHTS = 2;
+    private static final int HEADER_SIZE = 64;
+    
+    /**
+     * Write an SVM to a file. Only its support vectors are written. The
+     * input vectors must either all be SparseVectors, or all be dense
+     * (RealVector, FloatVector or BufferVector) of the same size.
+     * 
+     * @param svm   the SVM
+     * @param file  the file to write to
+     * @throws IOException  if the file cannot be written
+     */
+    public static void write(SVM svm, File file) throws IOException {
+        int kernel;
+        double param = 0;
+        if(svm.kernel instanceof LinearKernel) {
+            kernel = LINEAR;
+        } else if(svm.kernel instanceof GaussianKernel) {
+            kernel = GAUSSIAN;
+            param = ((GaussianKernel) svm.kernel).getVariance();
+        } else {
+            throw new IllegalArgumentException("unsupported kernel: " +
+                    svm.kernel.getClass().getName());
+        }
+        List<SupportVector> vectors = new ArrayList<SupportVector>();
+        boolean sparse = true;
+        for(SupportVector v : svm.vectors) {
+            if(v.alpha <= SVM.EPSILON)
+                continue; // not a support vector
+            vectors.add(v);
+            if(!(v.x instanceof SparseVector))
+                sparse = false;
+        }
+        DataVector[] x = new DataVector[vectors.size()];
+        for(int i = 0; i < x.length; i++)
+            x[i] = vectors.get(i).x;
+        BinaryFormat.Output out = new BinaryFormat.Output(file);
+        try {
+            if(vectors.isEmpty() && svm.w != null) {
+                writeHeader(out, kernel, WEIGHTS, 0, svm.w.size(), param,
+                        svm, 0);
+                for(int j = 0; j < svm.w.size(); j++)
+                    out.writeDouble(svm.w.get(j));
+            } else if(sparse) {
+                writeHeader(out, kernel, SPARSE, x.length,
+                        BinaryFormat.maxSize(x), param, svm,
+                        BinaryFormat.nonZeros(x));
+                writeCoefficients(out, vectors);
+                BinaryFormat.writeSparse(out, x);
+            } else {
+                final int cols = x.length == 0 ? 0 : x[0].size();
+                writeHeader(out, kernel, DENSE, x.length, cols, param, svm, 0);
+                writeCoefficients(out, vectors);
+                BinaryFormat.writeDense(out, x, cols);
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    private static void writeHeader(BinaryFormat.Output out, int kernel,
+            int layout, int rows, int cols, double param, SVM svm, long nnz)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(kernel);
+        out.writeInt(layout);
+        out.writeInt(rows);
+        out.writeInt(cols);
+        out.writeDouble(param);
+        out.writeDouble(svm.b);
+        out.writeDouble(svm.c);
+        out.writeLong(nnz);
+        out.writeLong(0);
+    }
+    
+    private static void writeCoefficients(BinaryFormat.Output out,
+            List<SupportVector> vectors) throws IOException {
+        for(SupportVector v : vectors)
+            out.writeDouble(v.alpha * v.y);
+    }
+    
+    /**
+     * Load an SVM by memory-mapping the given file.
+     * 
+     * @param file  the file to load
+     * @return      the SVM
+     * @throws IOException  if the file cannot be read or is not valid
+     */
+    public static SVM map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // mappings remain valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = BinaryFormat.map(channel, 0, HEADER_SIZE);
+            if(header.getInt() != MAGIC)
+                throw new IOException("not a binary model: " + file);
+            if(header.getInt() != VERSION)
+                throw new IOException("unsupported version: " + file);
+            final int kernelType = header.getInt(), layout = header.getInt();
+            final int rows = header.getInt(), cols = header.getInt();
+            final double param = header.getDouble();
+            final double b = header.getDouble(), c = header.getDouble();
+            final long nnz = header.getLong();
+            Kernel kernel;
+            if(kernelType == LINEAR)
+                kernel = new LinearKernel();
+            else if(kernelType == GAUSSIAN)
+                kernel = new GaussianKernel(param);
+            else
+                throw new IOException("unknown kernel: " + file);
+            SVM svm = new SVM(kernel, c);
+            svm.b = b;
+            if(layout == WEIGHTS) {
+                double[] w = new double[cols];
+                BinaryFormat.map(channel, HEADER_SIZE, 8L * cols)
+                    .asDoubleBuffer().get(w);
+                svm.w = new RealVector(w);
+                return svm;
+            }
+            double[] coef = new double[rows];
+            BinaryFormat.map(channel, HEADER_SIZE, 8L * rows)
+                .asDoubleBuffer().get(coef);
+            final long start = HEADER_SIZE + 8L * rows;
+            DataVector[] x;
+            if(layout == DENSE)
+                x = BinaryFormat.mapDense(channel, start, rows, cols);
+            else if(layout == SPARSE)
+                x = BinaryFormat.mapSparse(channel, start, rows, nnz);
+            else
+                throw new IOException("unknown layout: " + file);
+            for(int i = 0; i < rows; i++) {
+                SupportVector v = new SupportVector(x[i], coef[i] < 0 ? -1 : 1);
+                v.alpha = Math.abs(coef[i]);
+                svm.vectors.add(v);
+            }
+            // collapse a linear SVM into its weight vector, as after training
+            svm.prune();
+            return svm;
+        } finally {
+            raf.close();
+        }
+    }
+}
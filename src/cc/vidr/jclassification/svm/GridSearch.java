@@ -0,0 +1,259 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import cc.vidr.jclassification.svm.kernel.Kernel;
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.util.TaskUtil;
+
+/**
+ * Chooses the kernel and soft-margin parameter of an SVM by k-fold
+ * cross-validation over a grid of candidate values.
+ * 
+ * Each combination of kernel and fold is a separate task, so they may be
+ * run in parallel. Within a task, the values of C are tried in increasing
+ * order, all sharing one kernel cache. Each starts from the Lagrange
+ * multipliers and threshold found with the previous value, which remain
+ * feasible as C increases.
+ * 
+ * @author  David A Roberts
+ */
+public class GridSearch {
+    /** The number of folds */
+    private final int numFolds;
+    /** The seed used to split the examples into folds */
+    private final long seed;
+    /** The training examples */
+    private final List<DataVector> x = new ArrayList<DataVector>();
+    private int[] y = new int[16];
+    
+    /**
+     * The cross-validated performance of one combination of parameters.
+     */
+    public static class Result {
+        /** The kernel function */
+        public final Kernel kernel;
+        /** The soft-margin parameter */
+        public final double c;
+        /** The fraction of held-out examples classified correctly */
+        public final double accuracy;
+        /** The total training time over all folds, in milliseconds */
+        public final long time;
+        
+        Result(Kernel kernel, double c, double accuracy, long time) {
+            this.kernel = kernel;
+            this.c = c;
+            this.accuracy = accuracy;
+            this.time = time;
+        }
+        
+        public String toString() {
+            return kernel + ", C=" + c + ": accuracy " + accuracy +
+                " in " + time + "ms";
+        }
+    }
+    
+    /**
+     * Create a grid search.
+     * 
+     * @param numFolds  the number of folds to split the examples into
+     * @param seed      the seed used to split the examples into folds
+     */
+    public GridSearch(int numFolds, long seed) {
+        if(numFolds < 2)
+            throw new IllegalArgumentException("at least two folds are needed");
+        this.numFolds = numFolds;
+        this.seed = seed;
+    }
+    
+    /**
+     * Add the given example.
+     * 
+     * @param x  the input vector
+     * @param y  the target class: either +1 or -1
+     */
+    public void add(DataVector x, int y) {
+        if(Math.abs(y) != 1)
+            throw new IllegalArgumentException("y must be either +1 or -1");
+        if(this.x.size() == this.y.length)
+            this.y = Arrays.copyOf(this.y, 2*this.y.length);
+        this.y[this.x.size()] = y;
+        this.x.add(x);
+    }
+    
+    /**
+     * Cross-validate every combination of the given kernels and values of
+     * C.
+     * 
+     * @param kernels   the candidate kernel functions
+     * @param cs        the candidate soft-margin parameters
+     * @param options   the settings for each training run (its executor
+     *                  and cache are ignored, and its cache size is shared
+     *                  between the tasks that run at once)
+     * @param executor  the executor to run the tasks with, or null to run
+     *                  them one after another
+     * @return          the results, for each kernel in turn with C in
+     *                  increasing order
+     */
+    public List<Result> search(final Kernel[] kernels, double[] cs,
+            final SMO.Options options, ExecutorService executor) {
+        final int n = x.size();
+        final double[] sortedCs = cs.clone();
+        Arrays.sort(sortedCs);
+        // assign the examples to folds at random
+        final int[] fold = new int[n];
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++)
+            order[i] = i;
+        Random random = new Random(seed);
+        for(int i = n - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1), t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        for(int p = 0; p < n; p++)
+            fold[order[p]] = p % numFolds;
+        
+        // each task has its own kernel cache, so split the memory budget
+        // between the tasks that may run at once
+        final SMO.Options sub = options.copy();
+        sub.cacheSize = options.cacheSize /
+            TaskUtil.parallelism(executor, kernels.length * numFolds);
+        
+        // [kernel][C] summed over the folds
+        final int[][] correct = new int[kernels.length][sortedCs.length];
+        final long[][] time = new long[kernels.length][sortedCs.length];
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int a = 0; a < kernels.length; a++) {
+            for(int f = 0; f < numFolds; f++) {
+                final int k = a, testFold = f;
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        int[] foldCorrect = new int[sortedCs.length];
+                        long[] foldTime = new long[sortedCs.length];
+                        evaluate(kernels[k], sortedCs, sub, fold,
+                                testFold, foldCorrect, foldTime);
+                        synchronized(correct) {
+                            for(int c = 0; c < sortedCs.length; c++) {
+                                correct[k][c] += foldCorrect[c];
+                                time[k][c] += foldTime[c];
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        TaskUtil.run(tasks, executor);
+        
+        List<Result> results = new ArrayList<Result>();
+        for(int a = 0; a < kernels.length; a++) {
+            for(int c = 0; c < sortedCs.length; c++) {
+                Result result = new Result(kernels[a], sortedCs[c],
+                        (double) correct[a][c] / n, time[a][c]);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Train on all folds but one for each value of C in turn, warm-starting
+     * each from the last, and count the correct predictions on the
+     * remaining fold.
+     * 
+     * @param kernel    the kernel function
+     * @param cs        the values of C, in increasing order
+     * @param options   the training settings
+     * @param fold      the fold of each example
+     * @param testFold  the fold to hold out
+     * @param correct   the array to store the number of correct predictions
+     *                  for each value of C in
+     * @param time      the array to store the training time for each value
+     *                  of C in
+     */
+    private void evaluate(Kernel kernel, double[] cs, SMO.Options options,
+            int[] fold, int testFold, int[] correct, long[] time) {
+        List<SupportVector> train = new ArrayList<SupportVector>();
+        List<DataVector> test = new ArrayList<DataVector>();
+        List<Integer> testY = new ArrayList<Integer>();
+        for(int i = 0; i < fold.length; i++) {
+            if(fold[i] != testFold) {
+                train.add(new SupportVector(x.get(i), y[i]));
+            } else {
+                test.add(x.get(i));
+                testY.add(y[i]);
+            }
+        }
+        DataVector[] trainX = new DataVector[train.size()];
+        for(int i = 0; i < trainX.length; i++)
+            trainX[i] = train.get(i).x;
+        DataVector[] testX = test.toArray(new DataVector[test.size()]);
+        double[] u = new double[testX.length];
+        
+        SMO.Options sub = options.copy();
+        sub.executor = null;
+        sub.cache = new KernelCache(kernel, trainX, options.cacheSize);
+        double b = 0;
+        for(int c = 0; c < cs.length; c++) {
+            // the multipliers left in train by the previous value of C
+            // are a feasible starting point for this one
+            SVM svm = new SVM(kernel, cs[c]);
+            svm.vectors.addAll(train);
+            svm.b = b;
+            final long start = System.currentTimeMillis();
+            SMO.train(svm, sub);
+            time[c] = System.currentTimeMillis() - start;
+            b = svm.b;
+            svm.output(testX, u);
+            for(int i = 0; i < u.length; i++)
+                if((u[i] > 0 ? 1 : -1) == testY.get(i))
+                    correct[c]++;
+        }
+    }
+    
+    /**
+     * Return the result with the highest accuracy, preferring the fastest
+     * in the event of a tie.
+     * 
+     * @param results  the results of a search
+     * @return         the best result
+     */
+    public static Result best(List<Result> results) {
+        Result best = null;
+        for(Result result : results)
+            if(best == null || result.accuracy > best.accuracy ||
+                    (result.accuracy == best.accuracy &&
+                     result.time < best.time))
+                best = result;
+        return best;
+    }
+}
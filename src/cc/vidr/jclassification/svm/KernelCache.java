@@ -0,0 +1,249 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm;
+
+import java.util.Arrays;
+
+import cc.vidr.jclassification.svm.kernel.Kernel;
+import cc.vidr.jclassification.svm.vector.DataVector;
+
+/**
+ * A bounded cache of kernel matrix rows, indexed by the position of each
+ * example in the training set. Rows are allocated on demand and filled
+ * lazily, so a row may be only partially computed. When the memory budget
+ * is exhausted, the least recently used row is evicted.
+ * 
+ * Rows may be filled concurrently from several threads with
+ * {@link #fill}, provided that the ranges being filled are disjoint and
+ * no rows are allocated meanwhile.
+ * 
+ * @author  David A Roberts
+ */
+public class KernelCache {
+    /** Marks an entry that has not yet been computed */
+    private static final double EMPTY = Double.NaN;
+    /** The kernel function */
+    private final Kernel kernel;
+    /** The input vectors */
+    private final DataVector[] x;
+    /** The diagonal of the kernel matrix */
+    private final double[] diagonal;
+    /** The cached rows, or null if the row is not cached */
+    private final double[][] rows;
+    /** The LRU list, threaded through the row indices (head = newest) */
+    private final int[] prev, next;
+    private int head = -1, tail = -1;
+    /** The number of rows currently cached, and the maximum allowed */
+    private int size = 0;
+    private final int capacity;
+    /** Statistics */
+    private long hits = 0, misses = 0;
+    
+    /**
+     * Create a kernel cache.
+     * 
+     * @param kernel     the kernel function
+     * @param x          the input vectors
+     * @param cacheSize  the memory budget, in megabytes
+     */
+    public KernelCache(Kernel kernel, DataVector[] x, double cacheSize) {
+        final int n = x.length;
+        this.kernel = kernel;
+        this.x = x;
+        this.diagonal = new double[n];
+        Arrays.fill(diagonal, EMPTY);
+        this.rows = new double[n][];
+        this.prev = new int[n];
+        this.next = new int[n];
+        // at least two rows are needed for each step of SMO
+        final long rowSize = 8L * Math.max(n, 1);
+        this.capacity = (int) Math.min(n,
+                Math.max(2, (long) (cacheSize * 1024 * 1024) / rowSize));
+    }
+    
+    /**
+     * Get the value of the kernel function for the given examples,
+     * using a cached value if one is available. A new row is not allocated
+     * if neither example is cached.
+     * 
+     * @param i  the index of the first example
+     * @param j  the index of the second example
+     * @return   the value
+     */
+    public double getValue(int i, int j) {
+        if(i == j)
+            return getDiagonal(i);
+        if(rows[i] != null && !Double.isNaN(rows[i][j])) {
+            hits++;
+            if(rows[j] != null) rows[j][i] = rows[i][j];
+            return rows[i][j];
+        }
+        if(rows[j] != null && !Double.isNaN(rows[j][i])) {
+            hits++;
+            if(rows[i] != null) rows[i][j] = rows[j][i];
+            return rows[j][i];
+        }
+        misses++;
+        final double k = kernel.getValue(x[i], x[j]);
+        if(rows[i] != null) rows[i][j] = k;
+        if(rows[j] != null) rows[j][i] = k;
+        return k;
+    }
+    
+    /**
+     * Get the value of the kernel function of the given example with
+     * itself.
+     * 
+     * @param i  the index of the example
+     * @return   the value
+     */
+    public double getDiagonal(int i) {
+        if(Double.isNaN(diagonal[i])) {
+            misses++;
+            diagonal[i] = kernel.getValue(x[i], x[i]);
+        } else {
+            hits++;
+        }
+        return diagonal[i];
+    }
+    
+    /**
+     * Get the given row of the kernel matrix, allocating it (and evicting
+     * the least recently used row if necessary) if it is not already
+     * cached. Entries that have not yet been computed are NaN; they are
+     * filled in by {@link #getValue} and {@link #fill}.
+     * 
+     * @param i  the index of the row
+     * @return   the (possibly partial) row
+     */
+    double[] getRow(int i) {
+        if(rows[i] != null) {
+            unlink(i);
+        } else {
+            double[] row;
+            if(size == capacity) {
+                // reuse the storage of the least recently used row
+                final int lru = tail;
+                unlink(lru);
+                row = rows[lru];
+                rows[lru] = null;
+            } else {
+                row = new double[x.length];
+                size++;
+            }
+            Arrays.fill(row, EMPTY);
+            row[i] = getDiagonal(i);
+            rows[i] = row;
+        }
+        link(i);
+        return rows[i];
+    }
+    
+    /**
+     * Compute the missing entries of the given row for the examples
+     * indices[from..to-1]. Safe to call concurrently for disjoint ranges,
+     * as long as the entries linking any two rows being filled have
+     * already been computed.
+     * 
+     * @param i        the index of the row
+     * @param row      the row, as returned by {@link #getRow}
+     * @param indices  the indices of the entries to compute
+     * @param from     the first position in indices (inclusive)
+     * @param to       the last position in indices (exclusive)
+     */
+    void fill(int i, double[] row, int[] indices, int from, int to) {
+        long h = 0, m = 0;
+        for(int p = from; p < to; p++) {
+            final int j = indices[p];
+            if(!Double.isNaN(row[j])) {
+                h++;
+            } else if(rows[j] != null && !Double.isNaN(rows[j][i])) {
+                // the kernel matrix is symmetric
+                row[j] = rows[j][i];
+                h++;
+            } else {
+                row[j] = kernel.getValue(x[i], x[j]);
+                m++;
+            }
+        }
+        synchronized(this) {
+            hits += h;
+            misses += m;
+        }
+    }
+    
+    /**
+     * Return the number of kernel values served from the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Return the number of kernel values that had to be computed.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Is this a cache of the given kernel over the given input vectors?
+     */
+    boolean isFor(Kernel kernel, DataVector[] x) {
+        if(kernel != this.kernel || x.length != this.x.length)
+            return false;
+        for(int i = 0; i < x.length; i++)
+            if(x[i] != this.x[i])
+                return false;
+        return true;
+    }
+    
+    /**
+     * Return the maximum number of rows that may be cached at once.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Insert the given row at the head of the LRU list.
+     */
+    private void link(int i) {
+        prev[i] = -1;
+        next[i] = head;
+        if(head != -1) prev[head] = i;
+        head = i;
+        if(tail == -1) tail = i;
+    }
+    
+    /**
+     * Remove the given row from the LRU list.
+     */
+    private void unlink(int i) {
+        if(prev[i] != -1) next[prev[i]] = next[i];
+        else head = next[i];
+        if(next[i] != -1) prev[next[i]] = prev[i];
+        else tail = prev[i];
+    }
+}
@@ -0,0 +1,396 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import cc.vidr.jclassification.svm.kernel.Kernel;
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.util.TaskUtil;
+
+/**
+ * A multiclass classifier built from binary SVMs, either one per class
+ * (one-vs-rest) or one per pair of classes (one-vs-one). The binary
+ * sub-problems may be trained concurrently.
+ * 
+ * The sub-problems share the input vectors rather than copying them, so
+ * a support vector used by several binary SVMs is stored (and has its
+ * square norm cached) only once. The one-vs-rest sub-problems all have
+ * the same examples, so they also share kernel caches.
+ * 
+ * Prediction computes the kernel value between each distinct support
+ * vector and each input once, and accumulates it into the outputs of
+ * every binary SVM using that support vector.
+ * 
+ * @author  David A Roberts
+ */
+public class MulticlassSVM implements Serializable {
+    private static final long serialVersionUID = -3127455095306633590L;
+    /** The number of vectors in each block of a batch calculation */
+    private static final int BLOCK_SIZE = 64;
+    /** The number of input blocks in each task of a parallel calculation */
+    private static final int BLOCKS_PER_TASK = 16;
+    
+    /**
+     * How the multiclass problem is split into binary problems.
+     */
+    public enum Strategy {
+        /** One SVM per class, separating it from all other classes */
+        ONE_VS_REST,
+        /** One SVM per pair of classes, which then vote */
+        ONE_VS_ONE
+    }
+    
+    /** The kernel function */
+    private final Kernel kernel;
+    /** The soft-margin parameter */
+    private final double c;
+    /** How the problem is split into binary problems */
+    private final Strategy strategy;
+    /** The training examples (not serialized) */
+    private transient List<DataVector> x = new ArrayList<DataVector>();
+    private transient int[] y = new int[16];
+    /** The distinct classes, in increasing order */
+    private int[] classes;
+    /** The binary SVMs */
+    private SVM[] models;
+    /**
+     * The index (into classes) of the class each binary SVM votes for when
+     * its output is positive, and when it is negative (-1 for the rest)
+     */
+    private int[] positive, negative;
+    
+    /** The distinct support vectors of all the binary SVMs */
+    private transient DataVector[] vectors;
+    /**
+     * The coefficients alpha*y of each distinct support vector, in
+     * compressed sparse row form: support vector g has the coefficients
+     * coef[start[g]..start[g+1]-1] in the binary SVMs model[...]
+     */
+    private transient int[] start, model;
+    private transient double[] coef;
+    
+    /**
+     * Create a soft-margin multiclass SVM.
+     * 
+     * @param kernel    the kernel function
+     * @param c         the soft-margin parameter
+     * @param strategy  how to split the problem into binary problems
+     */
+    public MulticlassSVM(Kernel kernel, double c, Strategy strategy) {
+        this.kernel = kernel;
+        this.c = c;
+        this.strategy = strategy;
+    }
+    
+    /**
+     * Add the given example.
+     * 
+     * @param x      the input vector
+     * @param label  the class, which may be any integer
+     */
+    public void add(DataVector x, int label) {
+        if(this.x.size() == y.length)
+            y = Arrays.copyOf(y, 2*y.length);
+        y[this.x.size()] = label;
+        this.x.add(x);
+    }
+    
+    /**
+     * Train the binary SVMs one after another with the default settings.
+     */
+    public void train() {
+        train(new SMO.Options(), null);
+    }
+    
+    /**
+     * Train the binary SVMs.
+     * 
+     * @param options   the settings for each binary training run (its
+     *                  executor and cache are ignored, and its cache size
+     *                  is shared by the runs that may happen at once)
+     * @param executor  the executor to train the binary SVMs with, which
+     *                  bounds the number run at once, or null to train
+     *                  them one after another
+     */
+    public void train(final SMO.Options options, ExecutorService executor) {
+        final int n = x.size();
+        final DataVector[] xs = x.toArray(new DataVector[n]);
+        classes = distinct(Arrays.copyOf(y, n));
+        if(classes.length < 2)
+            throw new IllegalStateException("at least two classes are needed");
+        final int k = classes.length;
+        final int numModels = strategy == Strategy.ONE_VS_REST ?
+                k : k*(k-1)/2;
+        models = new SVM[numModels];
+        positive = new int[numModels];
+        negative = new int[numModels];
+        if(strategy == Strategy.ONE_VS_REST) {
+            for(int m = 0; m < k; m++) {
+                positive[m] = m;
+                negative[m] = -1;
+            }
+        } else {
+            int m = 0;
+            for(int a = 0; a < k; a++) {
+                for(int b = a+1; b < k; b++) {
+                    positive[m] = a;
+                    negative[m] = b;
+                    m++;
+                }
+            }
+        }
+        final int[] classOf = new int[n];
+        for(int i = 0; i < n; i++)
+            classOf[i] = Arrays.binarySearch(classes, y[i]);
+        
+        // split the memory budget between the runs that may happen at once
+        final double cacheSize =
+            options.cacheSize / TaskUtil.parallelism(executor, numModels);
+        // one-vs-rest sub-problems have identical examples, so a kernel
+        // cache can be handed from one to the next (there are never more
+        // caches than runs at once)
+        final ConcurrentLinkedQueue<KernelCache> caches =
+            new ConcurrentLinkedQueue<KernelCache>();
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int m = 0; m < numModels; m++) {
+            final int model = m;
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    SVM svm = new SVM(kernel, c);
+                    for(int i = 0; i < n; i++) {
+                        if(classOf[i] == positive[model])
+                            svm.add(xs[i], +1);
+                        else if(negative[model] == -1 ||
+                                classOf[i] == negative[model])
+                            svm.add(xs[i], -1);
+                    }
+                    SMO.Options sub = options.copy();
+                    sub.executor = null;
+                    sub.cache = null;
+                    sub.cacheSize = cacheSize;
+                    if(strategy == Strategy.ONE_VS_REST) {
+                        sub.cache = caches.poll();
+                        if(sub.cache == null)
+                            sub.cache = new KernelCache(kernel, xs,
+                                    cacheSize);
+                    }
+                    SMO.train(svm, sub);
+                    if(sub.cache != null)
+                        caches.add(sub.cache);
+                    models[model] = svm;
+                    return null;
+                }
+            });
+        }
+        TaskUtil.run(tasks, executor);
+        compile();
+    }
+    
+    /**
+     * Return the distinct values in the given array, in increasing order.
+     */
+    private static int[] distinct(int[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for(int i = 0; i < values.length; i++)
+            if(i == 0 || values[i] != values[i-1])
+                values[count++] = values[i];
+        return Arrays.copyOf(values, count);
+    }
+    
+    /**
+     * Gather the distinct support vectors of the binary SVMs, with their
+     * coefficients in each binary SVM.
+     */
+    private void compile() {
+        Map<DataVector, Integer> index =
+            new IdentityHashMap<DataVector, Integer>();
+        List<DataVector> distinct = new ArrayList<DataVector>();
+        int total = 0;
+        for(SVM svm : models) {
+            for(SupportVector v : svm.vectors) {
+                if(v.alpha <= SVM.EPSILON)
+                    continue; // not a support vector
+                if(!index.containsKey(v.x)) {
+                    index.put(v.x, distinct.size());
+                    distinct.add(v.x);
+                }
+                total++;
+            }
+        }
+        final int numVectors = distinct.size();
+        vectors = distinct.toArray(new DataVector[numVectors]);
+        start = new int[numVectors + 1];
+        for(SVM svm : models)
+            for(SupportVector v : svm.vectors)
+                if(v.alpha > SVM.EPSILON)
+                    start[index.get(v.x) + 1]++;
+        for(int g = 0; g < numVectors; g++)
+            start[g+1] += start[g];
+        model = new int[total];
+        coef = new double[total];
+        int[] pos = Arrays.copyOf(start, numVectors);
+        for(int m = 0; m < models.length; m++) {
+            for(SupportVector v : models[m].vectors) {
+                if(v.alpha <= SVM.EPSILON)
+                    continue;
+                final int p = pos[index.get(v.x)]++;
+                model[p] = m;
+                coef[p] = v.alpha * v.y;
+            }
+        }
+    }
+    
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        x = new ArrayList<DataVector>();
+        y = new int[16];
+        if(models != null)
+            compile();
+    }
+    
+    /**
+     * Return the distinct classes, in increasing order.
+     */
+    public int[] getClasses() {
+        return classes.clone();
+    }
+    
+    /**
+     * Return the number of distinct support vectors.
+     */
+    public int size() {
+        checkTrained();
+        return vectors.length;
+    }
+    
+    /**
+     * Predict the class of the given input.
+     * 
+     * @param x  the input vector
+     * @return   the class
+     */
+    public int predict(DataVector x) {
+        checkTrained();
+        int[] label = new int[1];
+        predict(new DataVector[] {x}, label, 0, 1);
+        return label[0];
+    }
+    
+    /**
+     * Predict the class of each of the given inputs.
+     * 
+     * @param xs      the input vectors
+     * @param labels  the array to store the classes in
+     */
+    public void predict(DataVector[] xs, int[] labels) {
+        checkTrained();
+        predict(xs, labels, 0, xs.length);
+    }
+    
+    /**
+     * Predict the class of each of the given inputs, in parallel.
+     * 
+     * @param xs        the input vectors
+     * @param labels    the array to store the classes in
+     * @param executor  the executor to run the calculations with
+     */
+    public void predict(final DataVector[] xs, final int[] labels,
+            ExecutorService executor) {
+        checkTrained();
+        final int taskSize = BLOCK_SIZE * BLOCKS_PER_TASK;
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int from = 0; from < xs.length; from += taskSize) {
+            final int start = from, end = Math.min(from + taskSize, xs.length);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    predict(xs, labels, start, end);
+                    return null;
+                }
+            });
+        }
+        TaskUtil.run(tasks, executor);
+    }
+    
+    /**
+     * Predict the classes of the inputs xs[from..to-1]. Each kernel value
+     * is computed once and added to the output of every binary SVM with
+     * that support vector, then the outputs are combined by argmax
+     * (one-vs-rest) or voting (one-vs-one, with ties going to the smaller
+     * class).
+     */
+    private void predict(DataVector[] xs, int[] labels, int from, int to) {
+        final int numModels = models.length, numVectors = vectors.length;
+        final double[] u = new double[BLOCK_SIZE * numModels];
+        final int[] votes = new int[classes.length];
+        for(int k0 = from; k0 < to; k0 += BLOCK_SIZE) {
+            final int k1 = Math.min(k0 + BLOCK_SIZE, to);
+            for(int k = k0; k < k1; k++)
+                for(int m = 0; m < numModels; m++)
+                    u[(k-k0)*numModels + m] = -models[m].b;
+            for(int g = 0; g < numVectors; g++) {
+                for(int k = k0; k < k1; k++) {
+                    final double value = kernel.getValue(vectors[g], xs[k]);
+                    final int row = (k-k0)*numModels;
+                    for(int p = start[g]; p < start[g+1]; p++)
+                        u[row + model[p]] += coef[p] * value;
+                }
+            }
+            for(int k = k0; k < k1; k++) {
+                final int row = (k-k0)*numModels;
+                int best = 0;
+                if(strategy == Strategy.ONE_VS_REST) {
+                    for(int m = 1; m < numModels; m++)
+                        if(u[row + m] > u[row + best])
+                            best = m;
+                } else {
+                    Arrays.fill(votes, 0);
+                    for(int m = 0; m < numModels; m++)
+                        votes[u[row + m] > 0 ? positive[m] : negative[m]]++;
+                    for(int i = 1; i < votes.length; i++)
+                        if(votes[i] > votes[best])
+                            best = i;
+                }
+                labels[k] = classes[best];
+            }
+        }
+    }
+    
+    private void checkTrained() {
+        if(models == null)
+            throw new IllegalStateException("the SVM has not been trained");
+    }
+}
@@ -0,0 +1,335 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cc.vidr.jclassification.svm.kernel.LinearKernel;
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.RealVector;
+import cc.vidr.jclassification.util.TaskUtil;
+
+/**
+ * An online trainer for linear SVMs, using the stochastic sub-gradient
+ * method of S Shalev-Shwartz, Y Singer and N Srebro (2007) in
+ * <a href="http://ttic.uchicago.edu/~shai/papers/ShalevSiSr07.pdf">
+ * Pegasos: Primal Estimated sub-GrAdient SOlver for SVM</a>.
+ * 
+ * Examples are consumed one at a time or in mini-batches, and need not be
+ * kept once they have been used, so the memory used is independent of the
+ * number of examples. It minimises
+ * $\frac{\lambda}{2} |w|^2 + \frac{1}{n} \sum_i \max(0, 1 - y_i u_i)$,
+ * which is equivalent to a soft-margin SVM with $C = 1/(\lambda n)$.
+ * 
+ * With the step size $1/(\lambda t)$ at step t, the weight vector is
+ * always $1/(\lambda t)$ times the sum of the sub-gradients of the loss,
+ * so each step only touches the non-zero elements of its examples. The
+ * optional projection step of the paper is not used, as it would break
+ * this. The weights are shared without locking, so several threads may
+ * update them at once, occasionally overwriting each other's updates
+ * (see Niu et al (2011), "Hogwild!").
+ * 
+ * @author  David A Roberts
+ */
+public class Pegasos {
+    /** The regularisation parameter */
+    private final double lambda;
+    /** The sum of the sub-gradients of the loss, for the weights */
+    private final double[] v;
+    /** A view of v, for dot products with the input vectors */
+    private final RealVector view;
+    /** Is the threshold learnt, as the weight of a constant feature? */
+    private final boolean learnThreshold;
+    /** The sum of the sub-gradients of the loss, for the threshold */
+    private double bias = 0;
+    /** The number of steps taken */
+    private final AtomicLong numSteps = new AtomicLong();
+    /** The number of examples used, counting repeats */
+    private final AtomicLong numExamples = new AtomicLong();
+    
+    /**
+     * Settings for training over a whole set of examples.
+     */
+    public static class Options {
+        /** The number of examples in each step */
+        public int batchSize = 1;
+        /** The number of passes over the examples */
+        public int numPasses = 1;
+        /**
+         * The executor to run the workers with, or null to run them one
+         * after another on the calling thread.
+         */
+        public ExecutorService executor = null;
+        /**
+         * The number of workers. Each takes an equal share of every pass.
+         */
+        public int numThreads = Runtime.getRuntime().availableProcessors();
+        /**
+         * The seed used to shuffle the examples before each pass. Runs
+         * with the same seed are only reproducible without an executor.
+         */
+        public long seed = System.nanoTime();
+    }
+    
+    /**
+     * Statistics describing a training run.
+     */
+    public static class Result {
+        /** The number of steps taken */
+        public final long numSteps;
+        /** The number of examples used, counting repeats */
+        public final long numExamples;
+        /** The time taken to train, in milliseconds */
+        public final long time;
+        
+        Result(long numSteps, long numExamples, long time) {
+            this.numSteps = numSteps;
+            this.numExamples = numExamples;
+            this.time = time;
+        }
+        
+        public String toString() {
+            return numSteps + " steps over " + numExamples +
+                " examples in " + time + "ms";
+        }
+    }
+    
+    /**
+     * Create an online trainer that also learns the threshold.
+     * 
+     * @param dimension  the number of input dimensions, which must exceed
+     *                   the index of every non-zero element of the inputs
+     * @param lambda     the regularisation parameter
+     */
+    public Pegasos(int dimension, double lambda) {
+        this(dimension, lambda, true);
+    }
+    
+    /**
+     * Create an online trainer.
+     * 
+     * @param dimension       the number of input dimensions, which must
+     *                        exceed the index of every non-zero element
+     *                        of the inputs
+     * @param lambda          the regularisation parameter
+     * @param learnThreshold  should the threshold be learnt? If so, it is
+     *                        treated as the weight of an extra constant
+     *                        feature, so it is regularised along with w.
+     *                        Otherwise it is zero.
+     */
+    public Pegasos(int dimension, double lambda, boolean learnThreshold) {
+        if(lambda <= 0)
+            throw new IllegalArgumentException("lambda must be positive");
+        this.lambda = lambda;
+        this.v = new double[dimension];
+        this.view = new RealVector(v);
+        this.learnThreshold = learnThreshold;
+    }
+    
+    /**
+     * Take a step on a single example. This may be called by several
+     * threads at once.
+     * 
+     * @param x  the input vector (dense or sparse)
+     * @param y  the target class: either +1 or -1
+     */
+    public void update(DataVector x, int y) {
+        checkClass(y);
+        final double scale = scale(numSteps.incrementAndGet() - 1);
+        numExamples.incrementAndGet();
+        if(y * scale * (x.dotProduct(view) + bias) < 1) {
+            SVM.addTo(x, v, y);
+            if(learnThreshold)
+                bias += y;
+        }
+    }
+    
+    /**
+     * Take a step on a mini-batch of examples, using the average of their
+     * sub-gradients. This may be called by several threads at once.
+     * 
+     * @param xs  the input vectors (dense or sparse)
+     * @param ys  the target classes: either +1 or -1
+     */
+    public void update(DataVector[] xs, int[] ys) {
+        if(ys.length != xs.length)
+            throw new IllegalArgumentException(
+                    "there must be one target class per input vector");
+        final int[] order = new int[xs.length];
+        for(int i = 0; i < order.length; i++)
+            order[i] = i;
+        update(xs, ys, order, 0, order.length, new boolean[order.length]);
+    }
+    
+    /**
+     * Take a step on the examples order[from..to-1].
+     * 
+     * @param violated  a buffer at least to-from long
+     */
+    private void update(DataVector[] xs, int[] ys, int[] order,
+            int from, int to, boolean[] violated) {
+        final double scale = scale(numSteps.incrementAndGet() - 1);
+        numExamples.addAndGet(to - from);
+        // find the examples within the margin before changing the weights,
+        // so that every example in the batch sees the same weights
+        for(int p = from; p < to; p++) {
+            final int i = order[p];
+            checkClass(ys[i]);
+            violated[p-from] = ys[i] * scale * (
+                    xs[i].dotProduct(view) + bias) < 1;
+        }
+        final double rate = 1.0 / (to - from);
+        for(int p = from; p < to; p++) {
+            if(!violated[p-from])
+                continue;
+            final int i = order[p];
+            SVM.addTo(xs[i], v, ys[i] * rate);
+            if(learnThreshold)
+                bias += ys[i] * rate;
+        }
+    }
+    
+    /**
+     * Train on the given examples, making the given number of passes over
+     * them in a random order. As nothing is copied, the examples may be
+     * memory-mapped (see {@link cc.vidr.jclassification.io.BinaryDataset}).
+     * 
+     * @param xs       the input vectors (dense or sparse)
+     * @param ys       the target classes: either +1 or -1
+     * @param options  the training settings
+     * @return         statistics describing the training run
+     */
+    public Result train(final DataVector[] xs, final int[] ys,
+            Options options) {
+        if(ys.length != xs.length)
+            throw new IllegalArgumentException(
+                    "there must be one target class per input vector");
+        if(options.batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be positive");
+        final long startTime = System.currentTimeMillis();
+        final long steps = numSteps.get(), examples = numExamples.get();
+        final Random random = new Random(options.seed);
+        final int batchSize = options.batchSize;
+        final int numWorkers = Math.max(1,
+                Math.min(options.numThreads, xs.length / batchSize));
+        final int[] order = new int[xs.length];
+        for(int i = 0; i < order.length; i++)
+            order[i] = i;
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int k = 0; k < numWorkers; k++) {
+            // each worker takes a fixed slice of the shuffled examples
+            final int from = (int) ((long) xs.length * k / numWorkers),
+                      to = (int) ((long) xs.length * (k+1) / numWorkers);
+            final boolean[] violated = new boolean[batchSize];
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    for(int p = from; p < to; p += batchSize)
+                        update(xs, ys, order, p, Math.min(p + batchSize, to),
+                                violated);
+                    return null;
+                }
+            });
+        }
+        for(int pass = 0; pass < options.numPasses; pass++) {
+            for(int i = order.length - 1; i > 0; i--) {
+                final int j = random.nextInt(i + 1);
+                final int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            TaskUtil.run(tasks, options.executor);
+        }
+        Result result = new Result(numSteps.get() - steps,
+                numExamples.get() - examples,
+                System.currentTimeMillis() - startTime);
+        return result;
+    }
+    
+    /**
+     * Return the objective function over the given examples:
+     * $\frac{\lambda}{2} |w|^2 + \frac{1}{n} \sum_i \max(0, 1 - y_i u_i)$
+     * 
+     * @param xs  the input vectors
+     * @param ys  the target classes
+     * @return    the value of the objective function
+     */
+    public double objective(DataVector[] xs, int[] ys) {
+        final double scale = scale(numSteps.get());
+        double loss = 0;
+        for(int i = 0; i < xs.length; i++)
+            loss += Math.max(0, 1 - ys[i] * scale * (
+                    xs[i].dotProduct(view) + bias));
+        double sqNorm = learnThreshold ? bias * bias : 0;
+        for(int i = 0; i < v.length; i++)
+            sqNorm += v[i] * v[i];
+        return lambda / 2 * scale * scale * sqNorm + loss / xs.length;
+    }
+    
+    /**
+     * Return the number of steps taken so far.
+     */
+    public long getNumSteps() {
+        return numSteps.get();
+    }
+    
+    /**
+     * Create a linear SVM with the current weights, which may then be used
+     * (and saved) like any other. Its soft-margin parameter is
+     * $1/(\lambda n)$, where n is the number of examples used so far,
+     * counting repeats. Training may continue afterwards without affecting
+     * the SVM.
+     * 
+     * @return  the SVM
+     */
+    public SVM svm() {
+        final double scale = scale(numSteps.get());
+        SVM svm = new SVM(new LinearKernel(),
+                1 / (lambda * Math.max(numExamples.get(), 1)));
+        double[] w = new double[v.length];
+        for(int i = 0; i < w.length; i++)
+            w[i] = scale * v[i];
+        svm.w = new RealVector(w);
+        // the SVM's output is w.x - b
+        svm.b = -scale * bias;
+        return svm;
+    }
+    
+    /**
+     * Return the factor relating the sums of the sub-gradients to the
+     * weights after t steps.
+     */
+    private double scale(long t) {
+        return t == 0 ? 0 : 1 / (lambda * t);
+    }
+    
+    private static void checkClass(int y) {
+        if(Math.abs(y) != 1)
+            throw new IllegalArgumentException("y must be either +1 or -1");
+    }
+}
@@ -22,12 +22,15 @@
 
 package cc.vidr.jclassification.svm;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
+import cc.vidr.jclassification.svm.vector.DataVector;
 import cc.vidr.jclassification.util.MathUtil;
+import cc.vidr.jclassification.util.TaskUtil;
 
 /**
  * An implementation of the Sequential Minimal Optimization (SMO) algorithm
@@ -40,28 +43,308 @@ import cc.vidr.jclassification.util.MathUtil;
  */
 public class SMO {
     private static final Random random = new Random();
+    /** The smallest number of examples worth updating in a separate task */
+    private static final int MIN_TASK_SIZE = 256;
+    /** Substitute for non-positive curvature in second order selection */
+    private static final double TAU = 1e-12;
+    /** The number of steps between shrinks with second order selection */
+    private static final int SHRINK_INTERVAL = 1000;
+    /** The number of full passes an example must settle for to be shrunk */
+    private static final int SHRINK_PASSES = 2;
     /** The SVM to be trained */
     private SVM svm;
-    /** The error cache */
-    private Map<SupportVector,Double> errorCache =
-        new HashMap<SupportVector,Double>();
+    /** The training examples */
+    private final SupportVector[] vectors;
+    /** The kernel cache */
+    private final KernelCache cache;
+    /** The target classes, indexed by example */
+    private final byte[] y;
+    /** The Lagrange multipliers, indexed by example */
+    private final double[] alpha;
+    /**
+     * The error cache, indexed by example (only valid if non-bound, unless
+     * errors are maintained for all examples)
+     */
+    private final double[] error;
+    /** Is the Lagrange multiplier bound? Indexed by example */
+    private final boolean[] bound;
+    /** The indices of the non-bound examples, in no particular order */
+    private final int[] nonBound;
+    /** The position of each example in nonBound, or -1 if bound */
+    private final int[] nonBoundPos;
+    /** The number of non-bound examples */
+    private int numNonBound = 0;
+    /** The non-bound examples with minimum and maximum error (or -1) */
+    private int minError = -1, maxError = -1;
+    /** The executor for parallel error cache updates, or null */
+    private final ExecutorService executor;
+    /** The maximum number of parallel error cache update tasks */
+    private final int numTasks;
+    /** The working set selection strategy */
+    private final Selection selection;
+    /** Is the error cache maintained for all examples, not just non-bound? */
+    private final boolean allErrors;
+    /** The indices of the examples that may be optimised, in index order */
+    private final int[] working;
+    /** The number of examples that may be optimised */
+    private final int numWorking;
+    /** The indices of the active (unshrunk) examples, in index order */
+    private final int[] active;
+    /** The number of active examples */
+    private int numActive;
+    /** Should settled bound examples be shrunk from the active set? */
+    private final boolean shrinking;
+    /** The number of full passes each example has stayed bound for */
+    private final int[] settled;
+    /** The number of successful steps taken */
+    private long numSteps = 0;
+    
+    /**
+     * Strategies for selecting the pair of examples to optimise.
+     */
+    public enum Selection {
+        /**
+         * Platt's heuristics: examples violating the KKT conditions are
+         * paired with the example maximising |E1-E2|.
+         */
+        PLATT,
+        /**
+         * The second order selection of Fan, Chen and Lin (2005):
+         * the maximal violating example is paired with the example
+         * giving the greatest decrease in the objective function.
+         */
+        SECOND_ORDER
+    }
+    
+    /**
+     * Settings controlling how an SVM is trained.
+     */
+    public static class Options {
+        /** The memory budget of the kernel cache, in megabytes */
+        public double cacheSize = 100;
+        /**
+         * The executor used to update the error cache in parallel, or null
+         * to update it serially. The results are identical either way.
+         */
+        public ExecutorService executor = null;
+        /** The maximum number of tasks to split each update into */
+        public int numTasks = Runtime.getRuntime().availableProcessors();
+        /** The working set selection strategy */
+        public Selection selection = Selection.PLATT;
+        /**
+         * Should examples that are likely to stay at a bound be temporarily
+         * removed from consideration? All examples are checked again
+         * before training finishes.
+         */
+        public boolean shrinking = false;
+        /**
+         * A kernel cache to use instead of creating a new one, or null.
+         * It must have been created with the SVM's kernel over the same
+         * input vectors, in the same order. Its contents remain valid, so
+         * it may be reused by successive training runs on the same
+         * examples, but not by two runs at once.
+         */
+        public KernelCache cache = null;
+        /**
+         * Should the non-support vectors be removed from the SVM after
+         * training? Keeping them allows training to be resumed later from
+         * exactly the same state, e.g. after adding new examples.
+         */
+        public boolean prune = true;
+        /**
+         * Should only the examples that violate the KKT conditions at the
+         * start of training (normally those added since the SVM was last
+         * trained), and the non-bound examples, be optimised? Training
+         * stops once they satisfy the conditions, without checking the
+         * others again, so the result only approximates a full retrain.
+         * Has no effect on an untrained SVM.
+         */
+        public boolean incremental = false;
+        
+        /**
+         * Return a copy of these settings.
+         */
+        Options copy() {
+            Options copy = new Options();
+            copy.cacheSize = cacheSize;
+            copy.executor = executor;
+            copy.numTasks = numTasks;
+            copy.selection = selection;
+            copy.shrinking = shrinking;
+            copy.cache = cache;
+            copy.prune = prune;
+            copy.incremental = incremental;
+            return copy;
+        }
+    }
     
-    private SMO(SVM svm) {
+    /**
+     * Statistics describing a training run, so that different settings
+     * may be compared.
+     */
+    public static class Result {
+        /** The working set selection strategy used */
+        public final Selection selection;
+        /** The number of successful optimisation steps taken */
+        public final long numSteps;
+        /** The time taken to converge, in milliseconds */
+        public final long time;
+        /** The number of support vectors found */
+        public final int numSupportVectors;
+        /** The number of kernel values served from the kernel cache */
+        public final long cacheHits;
+        /** The number of kernel values that had to be computed */
+        public final long cacheMisses;
+        
+        Result(Selection selection, long numSteps, long time,
+                int numSupportVectors, long cacheHits, long cacheMisses) {
+            this.selection = selection;
+            this.numSteps = numSteps;
+            this.time = time;
+            this.numSupportVectors = numSupportVectors;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+        }
+        
+        public String toString() {
+            return selection + ": " + numSteps + " steps in " + time + "ms, " +
+                numSupportVectors + " support vectors, " +
+                cacheHits + " kernel cache hits, " + cacheMisses + " misses";
+        }
+    }
+    
+    private SMO(SVM svm, Options options) {
         this.svm = svm;
+        this.vectors = svm.vectors.toArray(new SupportVector[svm.size()]);
+        final int n = vectors.length;
+        DataVector[] x = new DataVector[n];
+        this.y = new byte[n];
+        this.alpha = new double[n];
+        this.error = new double[n];
+        this.bound = new boolean[n];
+        this.nonBound = new int[n];
+        this.nonBoundPos = new int[n];
+        this.active = new int[n];
+        this.working = new int[n];
+        this.shrinking = options.shrinking;
+        this.settled = new int[n];
+        this.selection = options.selection;
+        boolean warm = false;
+        for(int i = 0; i < n; i++) {
+            x[i] = vectors[i].x;
+            y[i] = vectors[i].y;
+            if(vectors[i].alpha < -SVM.EPSILON ||
+                    vectors[i].alpha > svm.c + SVM.EPSILON)
+                throw new IllegalArgumentException(
+                        "Lagrange multipliers must be between 0 and C");
+            // remove any rounding error left by earlier training
+            alpha[i] = MathUtil.clamp(vectors[i].alpha, 0, svm.c);
+            warm |= alpha[i] != 0;
+            bound[i] = true;
+            nonBoundPos[i] = -1;
+            active[i] = i;
+            error[i] = -svm.b - y[i]; // the output if all alphas are zero
+        }
+        if(options.cache == null) {
+            this.cache = new KernelCache(svm.kernel, x, options.cacheSize);
+        } else if(options.cache.isFor(svm.kernel, x)) {
+            this.cache = options.cache;
+        } else {
+            throw new IllegalArgumentException(
+                    "the kernel cache is for different input vectors");
+        }
+        this.executor = options.executor;
+        this.numTasks = Math.max(1, options.numTasks);
+        // when continuing from an earlier solution, most of the examples are
+        // bound support vectors, so recomputing their errors on demand
+        // would cost more than keeping them all up to date
+        this.allErrors = selection == Selection.SECOND_ORDER || warm;
+        
+        // continue from any existing Lagrange multipliers, adding the
+        // contribution of each support vector to the errors a row at a time
+        for(int j = 0; j < n; j++) {
+            if(alpha[j] == 0)
+                continue;
+            final double[] row = cache.getRow(j);
+            cache.fill(j, row, active, 0, n);
+            for(int i = 0; i < n; i++)
+                error[i] += alpha[j] * y[j] * row[i];
+            setBound(j, MathUtil.leq(alpha[j], 0, SVM.EPSILON) ||
+                        MathUtil.geq(alpha[j], svm.c, SVM.EPSILON));
+        }
+        for(int p = 0; p < numNonBound; p++) {
+            final int i = nonBound[p];
+            if(minError == -1 || error[i] < error[minError])
+                minError = i;
+            if(maxError == -1 || error[i] > error[maxError])
+                maxError = i;
+        }
+        // in incremental mode, the bound examples that already satisfy the
+        // KKT conditions are left out of training altogether
+        int m = 0;
+        for(int i = 0; i < n; i++)
+            if(!options.incremental || !bound[i] ||
+                    !satisfiesKKTConditions(i))
+                working[m++] = i;
+        this.numWorking = m;
+        unshrink();
     }
     
     /**
-     * Train the given SVM with SMO. The SVM should not have previously been
-     * trained i.e. the alpha and b values should be zero.
+     * Train the given SVM with SMO. Training starts from the SVM's current
+     * Lagrange multipliers and threshold, which are normally zero; any
+     * non-zero values must satisfy the constraints (0 <= alpha <= C and
+     * $\sum_i \alpha_i y_i = 0$), as they do after training the same
+     * examples with a smaller C.
+     * 
+     * In particular, an SVM may be retrained incrementally by adding new
+     * examples to it after training, and training it again. The error
+     * cache is seeded from the existing solution, so the work done is
+     * mostly that needed to satisfy the KKT conditions on the new examples,
+     * and with {@link Options#incremental} training stops as soon as they
+     * do.
+     * Unless {@link Options#prune} was disabled, the non-support vectors
+     * of the earlier training set are no longer present, so the result
+     * approximates training on the whole data set.
      * 
      * @param svm  the SVM to train
+     * @return     statistics describing the training run
+     */
+    public static Result train(SVM svm) {
+        return train(svm, new Options());
+    }
+    
+    /**
+     * Train the given SVM with SMO, using the given settings.
+     * 
+     * @param svm      the SVM to train
+     * @param options  the training settings
+     * @return         statistics describing the training run
      */
-    public static void train(SVM svm) {
-        SMO smo = new SMO(svm);
-        System.err.println(svm.size() + " training examples");
-        smo.train();
-        svm.prune();
-        System.err.println(svm.size() + " support vectors");
+    public static Result train(SVM svm, Options options) {
+        SMO smo = new SMO(svm, options);
+        final long hits = smo.cache.getHits(), misses = smo.cache.getMisses();
+        final long start = System.currentTimeMillis();
+        if(smo.selection == Selection.SECOND_ORDER)
+            smo.trainSecondOrder();
+        else
+            smo.train();
+        final long time = System.currentTimeMillis() - start;
+        // copy the results back into the SVM
+        int numSupportVectors = 0;
+        for(int i = 0; i < smo.vectors.length; i++) {
+            smo.vectors[i].alpha = smo.alpha[i];
+            if(smo.alpha[i] > SVM.EPSILON)
+                numSupportVectors++;
+        }
+        if(options.prune)
+            svm.prune();
+        else
+            svm.collapse();
+        Result result = new Result(smo.selection, smo.numSteps, time,
+                numSupportVectors, smo.cache.getHits() - hits,
+                smo.cache.getMisses() - misses);
+        return result;
     }
     
     /**
@@ -72,47 +355,219 @@ public class SMO {
         boolean examineAll = true; // examine entire training set initially
         while(numChanged > 0 || examineAll) {
             numChanged = 0;
-            for(SupportVector v : svm.vectors)
-                if((examineAll || !v.bound) && examineExample(v))
+            for(int p = 0; p < numActive; p++) {
+                final int i = active[p];
+                if(!examineAll && bound[i])
+                    continue;
+                if(examineExample(i))
                     numChanged++;
-            if(examineAll)
+                else if(bound[i])
+                    settled[i]++;
+            }
+            if(examineAll) {
+                if(numChanged == 0 && numActive < numWorking) {
+                    // the active examples satisfy the KKT conditions, so
+                    // check the shrunk examples with another full pass
+                    if(allErrors)
+                        reconstructErrors();
+                    unshrink();
+                    continue;
+                }
                 // only examine non-bound examples in next pass
                 examineAll = false;
-            else if(numChanged == 0)
+                if(shrinking)
+                    shrink();
+            } else if(numChanged == 0)
                 // all of the non-bound examples satisfy the KKT conditions,
                 // so examine the entire training set again
                 examineAll = true;
         }
     }
     
+    /**
+     * Perform SMO with second order working set selection. Each step
+     * optimises the example that most violates the KKT conditions,
+     * together with the example that maximises the second order
+     * approximation of the decrease in the objective function.
+     */
+    private void trainSecondOrder() {
+        final int n = vectors.length;
+        int counter = Math.min(n, SHRINK_INTERVAL);
+        while(true) {
+            // select i1 = argmin { E_t : t in I_up }
+            int i1 = -1;
+            for(int p = 0; p < numActive; p++) {
+                final int t = active[p];
+                if(isUp(t) && (i1 == -1 || error[t] < error[i1]))
+                    i1 = t;
+            }
+            
+            // select i2 = argmax { (E_t-E_i1)^2 / eta_t : t in I_low }
+            int i2 = -1;
+            double maxViolation = Double.NEGATIVE_INFINITY, maxGain = 0;
+            if(i1 != -1) {
+                final double[] row = cache.getRow(i1);
+                cache.fill(i1, row, active, 0, numActive);
+                final double k11 = cache.getDiagonal(i1);
+                for(int p = 0; p < numActive; p++) {
+                    final int t = active[p];
+                    if(!isLow(t))
+                        continue;
+                    final double diff = error[t] - error[i1];
+                    maxViolation = Math.max(maxViolation, diff);
+                    if(diff <= 0)
+                        continue;
+                    double eta = k11 + cache.getDiagonal(t) - 2*row[t];
+                    if(eta <= 0) eta = TAU;
+                    final double gain = diff*diff / eta;
+                    if(i2 == -1 || gain > maxGain) {
+                        i2 = t;
+                        maxGain = gain;
+                    }
+                }
+            }
+            // stop once the KKT conditions are satisfied to within epsilon
+            // on either side, as with Platt's heuristics
+            if(i2 == -1 || maxViolation < 2*SVM.EPSILON) {
+                if(numActive == numWorking)
+                    return;
+                // the active examples have converged, so bring the errors
+                // of the shrunk examples up to date and check them too
+                reconstructErrors();
+                unshrink();
+                counter = Math.min(n, SHRINK_INTERVAL);
+                continue;
+            }
+            
+            if(shrinking && --counter == 0) {
+                counter = Math.min(n, SHRINK_INTERVAL);
+                shrinkSecondOrder(error[i1], error[i1] + maxViolation);
+            }
+            
+            // the pair violates the KKT conditions, so a step can always be
+            // taken along it (even if the inputs are duplicates)
+            if(!takeStep(i1, i2, true))
+                throw new RuntimeException(
+                        "No progress could be made on a violating pair");
+        }
+    }
+    
+    /**
+     * Remove the bound examples that have not been optimised for several
+     * full passes from the active set.
+     */
+    private void shrink() {
+        int m = 0;
+        for(int p = 0; p < numActive; p++) {
+            final int i = active[p];
+            if(!bound[i] || settled[i] < SHRINK_PASSES)
+                active[m++] = i;
+        }
+        numActive = m;
+    }
+    
+    /**
+     * Remove the examples that cannot form a violating pair with any other
+     * example from the active set. An example that can only increase y*alpha
+     * is shrunk if its error exceeds that of every example that can
+     * decrease it, and vice versa.
+     * 
+     * @param minUp   the minimum error of the examples in I_up
+     * @param maxLow  the maximum error of the examples in I_low
+     */
+    private void shrinkSecondOrder(double minUp, double maxLow) {
+        int m = 0;
+        for(int p = 0; p < numActive; p++) {
+            final int t = active[p];
+            final boolean up = isUp(t), low = isLow(t);
+            if(up && !low && error[t] > maxLow)
+                continue;
+            if(low && !up && error[t] < minUp)
+                continue;
+            active[m++] = t;
+        }
+        numActive = m;
+    }
+    
+    /**
+     * Return all examples that may be optimised to the active set.
+     */
+    private void unshrink() {
+        for(int p = 0; p < numWorking; p++) {
+            active[p] = working[p];
+            settled[working[p]] = 0;
+        }
+        numActive = numWorking;
+    }
+    
+    /**
+     * Recompute the errors of the inactive examples, which are not updated
+     * while they are shrunk.
+     */
+    private void reconstructErrors() {
+        final int n = vectors.length;
+        boolean[] isActive = new boolean[n];
+        for(int p = 0; p < numActive; p++)
+            isActive[active[p]] = true;
+        for(int p = 0; p < numWorking; p++) {
+            final int t = working[p];
+            if(isActive[t])
+                continue;
+            double u = -svm.b;
+            for(int j = 0; j < n; j++)
+                if(alpha[j] != 0)
+                    u += alpha[j] * y[j] * cache.getValue(j, t);
+            error[t] = u - y[t];
+        }
+    }
+    
+    /**
+     * Can the given example's y*alpha be increased? (t in I_up)
+     */
+    private boolean isUp(int t) {
+        return y[t] > 0 ? !MathUtil.geq(alpha[t], svm.c, SVM.EPSILON)
+                        : !MathUtil.leq(alpha[t], 0, SVM.EPSILON);
+    }
+    
+    /**
+     * Can the given example's y*alpha be decreased? (t in I_low)
+     */
+    private boolean isLow(int t) {
+        return y[t] > 0 ? !MathUtil.leq(alpha[t], 0, SVM.EPSILON)
+                        : !MathUtil.geq(alpha[t], svm.c, SVM.EPSILON);
+    }
+    
     /**
      * Attempt to optimise the given example.
      * 
-     * @param v  the example to optimise
-     * @return   true iff positive progress was made
+     * @param i2  the index of the example to optimise
+     * @return    true iff positive progress was made
      */
-    private boolean examineExample(SupportVector v) {
-        if(satisfiesKKTConditions(v)) // not eligible for optimisation
+    private boolean examineExample(int i2) {
+        if(satisfiesKKTConditions(i2)) // not eligible for optimisation
             return false;
         // choose a vector with the second choice heuristic
-        if(!errorCache.isEmpty() && takeStep(secondChoice(error(v)), v))
+        if(numNonBound > 0 && takeStep(secondChoice(error(i2)), i2))
             return true;
         // the heuristic did not make positive progress,
-        // so try all non-bound examples
-        final int n = svm.vectors.size();
-        final int pos = random.nextInt(n); // iterate from random position
-        for(SupportVector v1 : svm.vectors.subList(pos, n))
-            if(!v1.bound && takeStep(v1, v))
+        // so try all non-bound examples (nonBound is only modified by a
+        // successful step, after which the loop exits)
+        final int m = numNonBound;
+        int pos = m > 0 ? random.nextInt(m) : 0; // iterate from random position
+        for(int p = pos; p < m; p++)
+            if(takeStep(nonBound[p], i2))
                 return true;
-        for(SupportVector v1 : svm.vectors.subList(0, pos))
-            if(!v1.bound && takeStep(v1, v))
+        for(int p = 0; p < pos; p++)
+            if(takeStep(nonBound[p], i2))
                 return true;
-        // positive progress was not made, so try entire training set
-        for(SupportVector v1 : svm.vectors.subList(pos, n))
-            if(v1.bound && takeStep(v1, v))
+        // positive progress was not made, so try entire active training set
+        final int n = numActive;
+        pos = random.nextInt(n);
+        for(int p = pos; p < n; p++)
+            if(bound[active[p]] && takeStep(active[p], i2))
                 return true;
-        for(SupportVector v1 : svm.vectors.subList(0, pos))
-            if(v1.bound && takeStep(v1, v))
+        for(int p = 0; p < pos; p++)
+            if(bound[active[p]] && takeStep(active[p], i2))
                 return true;
         // no adequate second example exists, so pick another first example
         return false;
@@ -121,13 +576,29 @@ public class SMO {
     /**
      * Get the error of the given example.
      * 
-     * @param v  the example
+     * @param i  the index of the example
      * @return   the error
      */
-    private double error(SupportVector v) {
-        if(errorCache.containsKey(v))
-            return errorCache.get(v);
-        return svm.output(v.x) - v.y;
+    private double error(int i) {
+        if(!bound[i] || allErrors)
+            return error[i];
+        return output(i) - y[i];
+    }
+    
+    /**
+     * Calculate the output of the SVM for the given example, using the
+     * current Lagrange multipliers.
+     * 
+     * @param i  the index of the example
+     * @return   the output (u)
+     */
+    private double output(int i) {
+        // $u = \sum_j \alpha_j y_j K(x_j, x) - b$
+        double u = -svm.b;
+        for(int j = 0; j < alpha.length; j++)
+            if(alpha[j] > SVM.EPSILON)
+                u += alpha[j] * y[j] * cache.getValue(j, i);
+        return u;
     }
     
     /**
@@ -136,16 +607,16 @@ public class SMO {
      *     0 < alpha < C => y u = 1
      *         alpha = C => y u <= 1
      * 
-     * @param v  the vector to check
+     * @param i  the index of the vector to check
      * @return   true iff the KKT conditions are satisfied (to within epsilon)
      */
-    private boolean satisfiesKKTConditions(SupportVector v) {
-        final double r = error(v) * v.y; // (u-y)*y = y*u-1
+    private boolean satisfiesKKTConditions(int i) {
+        final double r = error(i) * y[i]; // (u-y)*y = y*u-1
         // (r >= 0 or alpha >= C) and (r <= 0 or alpha <= 0)
         return (MathUtil.geq(r, 0, SVM.EPSILON) ||
-                MathUtil.geq(v.alpha, svm.c, SVM.EPSILON)) &&
+                MathUtil.geq(alpha[i], svm.c, SVM.EPSILON)) &&
                (MathUtil.leq(r, 0, SVM.EPSILON) ||
-                MathUtil.leq(v.alpha, 0, SVM.EPSILON));
+                MathUtil.leq(alpha[i], 0, SVM.EPSILON));
     }
     
     /**
@@ -153,39 +624,67 @@ public class SMO {
      * maximise the size of the step taken during optimisation. This is
      * approximated by attempting to choose a vector such that the
      * absolute difference in error values between the two vectors is
-     * maximised.
+     * maximised. The extreme errors are maintained by takeStep, so no
+     * search is necessary.
      * 
      * @param error  the error value of the first vector
-     * @return       the second vector
+     * @return       the index of the second vector
+     */
+    private int secondChoice(double error) {
+        // return vector with minimum error if positive, otherwise maximum
+        return error > 0 ? minError : maxError;
+    }
+    
+    /**
+     * Update the bound flag of the given example, adding it to or removing
+     * it from the set of non-bound examples as required.
+     * 
+     * @param i        the index of the example
+     * @param isBound  is the Lagrange multiplier now bound?
      */
-    private SupportVector secondChoice(double error) {
-        Entry<SupportVector,Double> best = null;
-        if(error > 0) { // return vector with minimum error
-            for(Entry<SupportVector,Double> entry : errorCache.entrySet())
-                if(best == null || entry.getValue() < best.getValue())
-                    best = entry;
-        } else { // return vector with maximum error
-            for(Entry<SupportVector,Double> entry : errorCache.entrySet())
-                if(best == null || entry.getValue() > best.getValue())
-                    best = entry;
+    private void setBound(int i, boolean isBound) {
+        if(bound[i] == isBound)
+            return;
+        bound[i] = isBound;
+        if(isBound) { // move the last non-bound example into the gap
+            final int p = nonBoundPos[i], last = nonBound[--numNonBound];
+            nonBound[p] = last;
+            nonBoundPos[last] = p;
+            nonBoundPos[i] = -1;
+        } else {
+            nonBound[numNonBound] = i;
+            nonBoundPos[i] = numNonBound++;
         }
-        return best.getKey();
+    }
+    
+    /**
+     * Optimise the given examples, chosen by Platt's heuristics.
+     * 
+     * @param i1  the index of an example to optimise
+     * @param i2  the index of the other example to optimise
+     * @return    true iff positive progress was made
+     */
+    private boolean takeStep(int i1, int i2) {
+        return takeStep(i1, i2, false);
     }
     
     /**
      * Optimise the given examples.
      * 
-     * @param v1  an example to optimise
-     * @param v2  the other example to optimise
-     * @return    true iff positive progress (a non-zero step size) was made
+     * @param i1           the index of an example to optimise
+     * @param i2           the index of the other example to optimise
+     * @param secondOrder  were they chosen by second order selection?
+     * @return             true iff positive progress (a non-zero step size)
+     *                     was made
      */
-    private boolean takeStep(SupportVector v1, SupportVector v2) {
-        if(v1.x == v2.x)
+    private boolean takeStep(int i1, int i2, boolean secondOrder) {
+        if(vectors[i1].x == vectors[i2].x && !secondOrder)
             // identical inputs cause objective function to become
-            // semi-definite, so positive progress cannot be made
+            // semi-definite, so positive progress cannot be made by
+            // Platt's heuristics
             return false;
-        final double alpha1 = v1.alpha, alpha2 = v2.alpha;
-        final double y1 = v1.y, y2 = v2.y;
+        final double alpha1 = alpha[i1], alpha2 = alpha[i2];
+        final double y1 = y[i1], y2 = y[i2];
         
         // endpoints (in terms of values of alpha2) of the diagonal line
         // segment representing the constraint between the two alpha values
@@ -194,7 +693,7 @@ public class SMO {
             // equation (12.3)
             l = Math.max(0, alpha2 - alpha1);
             h = Math.min(svm.c, svm.c + alpha2 - alpha1);
-        } else /* v1.y == v2.y */ {
+        } else /* y1 == y2 */ {
             // equation (12.4)
             l = Math.max(0, alpha2 + alpha1 - svm.c);
             h = Math.min(svm.c, alpha2 + alpha1);
@@ -202,61 +701,159 @@ public class SMO {
         if(l == h) // the alpha values are constrained to a single point
             return false;
         
-        final double k11 = svm.kernel.getValue(v1.x, v1.x),
-                     k12 = svm.kernel.getValue(v1.x, v2.x),
-                     k22 = svm.kernel.getValue(v2.x, v2.x);
+        final double k11 = cache.getDiagonal(i1),
+                     k12 = cache.getValue(i1, i2),
+                     k22 = cache.getDiagonal(i2);
         final double s = y1 * y2;
-        final double e1 = error(v1), e2 = error(v2);
+        final double e1 = error(i1), e2 = error(i2);
         
         // second derivative of the objective function along the diagonal line
-        final double eta = k11 + k22 - 2*k12; // equation (12.5)
+        double eta = k11 + k22 - 2*k12; // equation (12.5)
         // unusual circumstances
         if(eta < 0)
             throw new RuntimeException(
                     "The kernel function does not obey Mercer's condition");
-        if(eta == 0) // two training examples have the same input vector
-            return false;
+        if(eta == 0) { // two training examples have the same input vector
+            if(!secondOrder)
+                return false;
+            // substitute a small curvature, as in the selection, so that
+            // the step is clipped to the end of the diagonal line
+            eta = TAU;
+        }
         // normal circumstances - the objective function is positive
         // definite and there is a minimum along the diagonal line
-        v2.alpha = alpha2 + y2 * (e1-e2) / eta; // equation (12.6)
-        v2.alpha = MathUtil.clamp(v2.alpha, l, h); // equation (12.7)
+        double a2 = alpha2 + y2 * (e1-e2) / eta; // equation (12.6)
+        a2 = MathUtil.clamp(a2, l, h); // equation (12.7)
         
-        if(MathUtil.equals(v2.alpha, alpha2,
-                SVM.EPSILON*(v2.alpha+alpha2+SVM.EPSILON))) {
+        // Platt's heuristics rely on rejecting small steps to terminate, but
+        // a pair chosen by second order selection can always make progress
+        final double minChange =
+            secondOrder ? 0 : SVM.EPSILON*(a2+alpha2+SVM.EPSILON);
+        if(a2 == alpha2 || MathUtil.equals(a2, alpha2, minChange))
             // change in alpha2 was too small
-            v2.alpha = alpha2;
             return false;
-        }
         
-        v1.alpha = alpha1 + s*(alpha2-v2.alpha); // equation (12.8)
-        v1.bound = MathUtil.leq(v1.alpha, 0, SVM.EPSILON) ||
-            MathUtil.geq(v1.alpha, svm.c, SVM.EPSILON);
-        v2.bound = MathUtil.leq(v2.alpha, 0, SVM.EPSILON) ||
-            MathUtil.geq(v2.alpha, svm.c, SVM.EPSILON);
+        final double a1 = alpha1 + s*(alpha2-a2); // equation (12.8)
+        alpha[i1] = a1;
+        alpha[i2] = a2;
+        final boolean bound1 = MathUtil.leq(a1, 0, SVM.EPSILON) ||
+                               MathUtil.geq(a1, svm.c, SVM.EPSILON),
+                      bound2 = MathUtil.leq(a2, 0, SVM.EPSILON) ||
+                               MathUtil.geq(a2, svm.c, SVM.EPSILON);
+        setBound(i1, bound1);
+        setBound(i2, bound2);
         
         // update threshold
         final double b = svm.b;
-        final double delta1 = y1 * (v1.alpha - alpha1),
-                     delta2 = y2 * (v2.alpha - alpha2);
+        final double delta1 = y1 * (a1 - alpha1),
+                     delta2 = y2 * (a2 - alpha2);
         final double b1 = e1 + delta1*k11 + delta2*k12, // equation (12.9)
                      b2 = e2 + delta1*k12 + delta2*k22; // equation (12.10)
-        svm.b += !v1.bound ? b1 : !v2.bound ? b2 : (b1+b2)/2;
+        svm.b += !bound1 ? b1 : !bound2 ? b2 : (b1+b2)/2;
         
-        // update error cache
-        for(SupportVector v : svm.vectors) {
-            if(v.bound) continue; // bound examples are not cached
-            if(v == v1 || v == v2) continue;
-            final double k1 = svm.kernel.getValue(v1.x, v.x),
-                         k2 = svm.kernel.getValue(v2.x, v.x);
-            double error = errorCache.get(v);
-            error += delta1*k1 + delta2*k2 + b - svm.b; // equation (12.11)
-            errorCache.put(v, error);
+        // update error cache, caching the rows of both examples, and find
+        // the extreme errors for the second choice heuristic
+        // (bound examples are not cached unless all errors are maintained)
+        numSteps++;
+        settled[i1] = settled[i2] = 0;
+        final double[] row1 = cache.getRow(i1), row2 = cache.getRow(i2);
+        cache.getValue(i1, i2); // so that the rows can be filled in parallel
+        final int[] indices = allErrors ? active : nonBound;
+        final int count = allErrors ? numActive : numNonBound;
+        final int tasks = executor == null ? 1 :
+            Math.min(numTasks, count / MIN_TASK_SIZE);
+        if(tasks <= 1) {
+            ErrorUpdate update = new ErrorUpdate(i1, i2, row1, row2,
+                    delta1, delta2, b - svm.b, indices, 0, count);
+            update.call();
+            minError = update.minError;
+            maxError = update.maxError;
+        } else {
+            // split the examples into contiguous blocks, and combine the
+            // results in order so that they match the serial update exactly
+            List<ErrorUpdate> updates = new ArrayList<ErrorUpdate>(tasks);
+            for(int t = 0; t < tasks; t++)
+                updates.add(new ErrorUpdate(i1, i2, row1, row2,
+                        delta1, delta2, b - svm.b, indices,
+                        (int) ((long) count * t / tasks),
+                        (int) ((long) count * (t+1) / tasks)));
+            TaskUtil.run(updates, executor);
+            minError = maxError = -1;
+            for(ErrorUpdate update : updates) {
+                if(update.minError == -1)
+                    continue; // no non-bound examples in this block
+                if(minError == -1 ||
+                        error[update.minError] < error[minError])
+                    minError = update.minError;
+                if(maxError == -1 ||
+                        error[update.maxError] > error[maxError])
+                    maxError = update.maxError;
+            }
         }
-        if(!v1.bound) errorCache.put(v1, 0.0);
-        else errorCache.remove(v1); // v1 is now bound - don't cache error
-        if(!v2.bound) errorCache.put(v2, 0.0);
-        else errorCache.remove(v2);
         
         return true;
     }
+    
+    /**
+     * Updates the error cache for a block of examples after a successful
+     * step, and finds the extreme errors of the non-bound examples within
+     * the block.
+     */
+    private class ErrorUpdate implements Callable<Object> {
+        private final int i1, i2;
+        private final double[] row1, row2;
+        private final double delta1, delta2, deltaB;
+        private final int[] indices;
+        private final int from, to;
+        /** The non-bound examples with minimum and maximum error (or -1) */
+        int minError = -1, maxError = -1;
+        
+        /**
+         * @param i1       the index of the first example optimised
+         * @param i2       the index of the second example optimised
+         * @param row1     the kernel cache row of the first example
+         * @param row2     the kernel cache row of the second example
+         * @param delta1   the change in y1*alpha1
+         * @param delta2   the change in y2*alpha2
+         * @param deltaB   the old threshold minus the new threshold
+         * @param indices  the indices of the examples to update
+         * @param from     the first position in indices (inclusive)
+         * @param to       the last position in indices (exclusive)
+         */
+        ErrorUpdate(int i1, int i2, double[] row1, double[] row2,
+                double delta1, double delta2, double deltaB,
+                int[] indices, int from, int to) {
+            this.i1 = i1;
+            this.i2 = i2;
+            this.row1 = row1;
+            this.row2 = row2;
+            this.delta1 = delta1;
+            this.delta2 = delta2;
+            this.deltaB = deltaB;
+            this.indices = indices;
+            this.from = from;
+            this.to = to;
+        }
+        
+        public Object call() {
+            cache.fill(i1, row1, indices, from, to);
+            cache.fill(i2, row2, indices, from, to);
+            for(int p = from; p < to; p++) {
+                final int i = indices[p];
+                if(!allErrors && (i == i1 || i == i2)) {
+                    error[i] = 0;
+                } else {
+                    // equation (12.11)
+                    error[i] += delta1*row1[i] + delta2*row2[i] + deltaB;
+                }
+                if(bound[i])
+                    continue;
+                if(minError == -1 || error[i] < error[minError])
+                    minError = i;
+                if(maxError == -1 || error[i] > error[maxError])
+                    maxError = i;
+            }
+            return null;
+        }
+    }
 }
@@ -27,12 +27,19 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import cc.vidr.jclassification.svm.kernel.GaussianKernel;
 import cc.vidr.jclassification.svm.kernel.Kernel;
 import cc.vidr.jclassification.svm.kernel.LinearKernel;
+import cc.vidr.jclassification.svm.vector.BufferVector;
 import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.FloatVector;
+import cc.vidr.jclassification.svm.vector.RealMatrix;
 import cc.vidr.jclassification.svm.vector.RealVector;
+import cc.vidr.jclassification.svm.vector.SparseVector;
+import cc.vidr.jclassification.util.TaskUtil;
 
 /**
  * An implementation of a Support Vector Machine, with support for
@@ -43,6 +50,10 @@ import cc.vidr.jclassification.svm.vector.RealVector;
 public class SVM implements Serializable {
     private static final long serialVersionUID = 7667970753574953210L;
     public static final double EPSILON = 1e-3;
+    /** The number of inputs in each block of a batch calculation */
+    private static final int BLOCK_SIZE = 64;
+    /** The number of input blocks in each task of a parallel calculation */
+    private static final int BLOCKS_PER_TASK = 16;
     /** The support vectors */
     List<SupportVector> vectors = new ArrayList<SupportVector>();
     /** The threshold */
@@ -51,6 +62,11 @@ public class SVM implements Serializable {
     Kernel kernel;
     /** The soft-margin parameter */
     double c;
+    /**
+     * The weight vector of a linear SVM, or null if it has not been
+     * computed (see {@link #prune})
+     */
+    RealVector w = null;
     
     /**
      * Create a soft-margin SVM.
@@ -86,17 +102,129 @@ public class SVM implements Serializable {
      * @param y  the target class
      */
     public void add(DataVector x, int y) {
+        checkTrainable();
         vectors.add(new SupportVector(x, y));
+        w = null;
+    }
+    
+    /**
+     * Add each row of the given matrix to the SVM as an example. The rows
+     * share the matrix's storage, so the whole training set is kept in
+     * one contiguous block of memory.
+     * 
+     * @param x  the input vectors, one per row
+     * @param y  the target classes
+     */
+    public void add(RealMatrix x, int[] y) {
+        checkTrainable();
+        if(y.length != x.rows())
+            throw new IllegalArgumentException(
+                    "there must be one target class per row");
+        for(int i = 0; i < y.length; i++)
+            vectors.add(new SupportVector(x.getRow(i), y[i]));
+        w = null;
     }
     
     /**
-     * Throw away all non-support vectors.
+     * Throw an exception if the support vectors have been thrown away, so
+     * that no more examples can be added.
+     */
+    private void checkTrainable() {
+        if(vectors.isEmpty() && w != null)
+            throw new IllegalStateException(
+                    "examples cannot be added to a compacted SVM");
+    }
+    
+    /**
+     * Throw away all non-support vectors. If the SVM has a linear kernel
+     * and real-valued (dense or sparse) inputs, the support vectors are also
+     * collapsed into a single weight vector, so that the output can be
+     * calculated with a single dot product.
      */
     public void prune() {
         Iterator<SupportVector> iter = vectors.iterator();
         while(iter.hasNext())
             if(iter.next().alpha <= EPSILON)
                 iter.remove();
+        collapse();
+    }
+    
+    /**
+     * Collapse the support vectors into a weight vector if possible (see
+     * {@link #prune}), without throwing away the non-support vectors.
+     */
+    void collapse() {
+        if(vectors.isEmpty() && w != null)
+            return; // compacted, or trained by Pegasos
+        w = kernel instanceof LinearKernel ? linearWeights(vectors) : null;
+    }
+    
+    /**
+     * Prune the SVM, then throw away the support vectors if they have been
+     * collapsed into a weight vector. This greatly reduces the size of a
+     * serialized linear SVM, but no more examples can be added to it.
+     */
+    public void compact() {
+        prune();
+        if(w != null)
+            vectors.clear();
+    }
+    
+    /**
+     * Calculate the weight vector of a linear SVM:
+     * $w = \sum_i \alpha_i y_i x_i$
+     * 
+     * @param vectors  the support vectors
+     * @return         the weight vector, or null if the input vectors are
+     *                 not real-valued
+     */
+    private static RealVector linearWeights(List<SupportVector> vectors) {
+        int size = 0;
+        for(SupportVector v : vectors) {
+            if(v.alpha <= EPSILON)
+                continue; // not a support vector (see output)
+            if(v.x instanceof RealVector)
+                size = Math.max(size, ((RealVector) v.x).size());
+            else if(v.x instanceof SparseVector)
+                size = Math.max(size, ((SparseVector) v.x).size());
+            else if(v.x instanceof FloatVector)
+                size = Math.max(size, ((FloatVector) v.x).size());
+            else if(v.x instanceof BufferVector)
+                size = Math.max(size, ((BufferVector) v.x).size());
+            else
+                return null;
+        }
+        // the weight vector is stored densely, as it is the sum of many
+        // (possibly sparse) vectors. Inputs may be longer than it (their
+        // extra elements have zero weight), and if there are no support
+        // vectors it is empty, so the output is just -b
+        double[] w = new double[size];
+        for(SupportVector v : vectors)
+            if(v.alpha > EPSILON)
+                addTo(v.x, w, v.alpha * v.y);
+        return new RealVector(w);
+    }
+    
+    /**
+     * Add a multiple of a real-valued (dense or sparse) vector to the given
+     * array, element-wise.
+     * 
+     * @param x      the vector
+     * @param sum    the array to add to
+     * @param scale  the multiple of the vector to add
+     */
+    static void addTo(DataVector x, double[] sum, double scale) {
+        if(x instanceof RealVector)
+            ((RealVector) x).addTo(sum, scale);
+        else if(x instanceof SparseVector)
+            ((SparseVector) x).addTo(sum, scale);
+        else if(x instanceof FloatVector)
+            ((FloatVector) x).addTo(sum, scale);
+        else if(x instanceof BufferVector)
+            ((BufferVector) x).addTo(sum, scale);
+        else
+            throw new IllegalArgumentException(
+                    "input vectors must be real-valued");
     }
     
     /**
@@ -114,6 +242,9 @@ public class SVM implements Serializable {
      * @return   the output (u)
      */
     public double output(DataVector x) {
+        if(w != null)
+            // $u = w \cdot x - b$
+            return x.dotProduct(w) - b;
         // $u = \sum_j \alpha_j y_j K(x_j, x) - b$
         double u = -b;
         for(SupportVector v : vectors) {
@@ -128,6 +259,85 @@ public class SVM implements Serializable {
         return u;
     }
     
+    /**
+     * Calculate the output of the SVM for each of the given inputs.
+     * 
+     * @param xs  the input vectors
+     * @return    the outputs
+     */
+    public double[] output(List<? extends DataVector> xs) {
+        double[] u = new double[xs.size()];
+        output(xs.toArray(new DataVector[u.length]), u);
+        return u;
+    }
+    
+    /**
+     * Calculate the output of the SVM for each of the given inputs.
+     * The inputs are processed in blocks, so that each support vector stays
+     * in cache while it is compared to every input in a block. No memory is
+     * allocated.
+     * 
+     * @param xs  the input vectors
+     * @param u   the array to store the outputs in
+     */
+    public void output(DataVector[] xs, double[] u) {
+        output(xs, u, 0, xs.length);
+    }
+    
+    /**
+     * Calculate the output of the SVM for each of the given inputs,
+     * in parallel.
+     * 
+     * @param xs        the input vectors
+     * @param u         the array to store the outputs in
+     * @param executor  the executor to run the calculations with
+     */
+    public void output(final DataVector[] xs, final double[] u,
+            ExecutorService executor) {
+        final int taskSize = BLOCK_SIZE * BLOCKS_PER_TASK;
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int from = 0; from < xs.length; from += taskSize) {
+            final int start = from, end = Math.min(from + taskSize, xs.length);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    output(xs, u, start, end);
+                    return null;
+                }
+            });
+        }
+        TaskUtil.run(tasks, executor);
+    }
+    
+    /**
+     * Calculate the output of the SVM for the inputs xs[from..to-1].
+     * 
+     * @param xs    the input vectors
+     * @param u     the array to store the outputs in
+     * @param from  the index of the first input (inclusive)
+     * @param to    the index of the last input (exclusive)
+     */
+    private void output(DataVector[] xs, double[] u, int from, int to) {
+        if(w != null) {
+            for(int k = from; k < to; k++)
+                u[k] = xs[k].dotProduct(w) - b;
+            return;
+        }
+        final int n = vectors.size();
+        for(int k0 = from; k0 < to; k0 += BLOCK_SIZE) {
+            final int k1 = Math.min(k0 + BLOCK_SIZE, to);
+            for(int k = k0; k < k1; k++)
+                u[k] = -b;
+            for(int j = 0; j < n; j++) {
+                final SupportVector v = vectors.get(j);
+                if(v.alpha <= EPSILON)
+                    continue; // not a support vector (see above)
+                final double coef = v.alpha * v.y;
+                for(int k = k0; k < k1; k++)
+                    u[k] += coef * kernel.getValue(v.x, xs[k]);
+            }
+        }
+    }
+    
     /**
      * Train a Gaussian SVM to learn the noisy XOR function.
      */
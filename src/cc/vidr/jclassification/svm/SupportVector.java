@@ -38,10 +38,11 @@ public class SupportVector implements Serializable {
     final DataVector x;
     /** The target class: either +1 or -1 */
     final byte y;
-    /** The Lagrange multiplier for this example */
+    /**
+     * The Lagrange multiplier for this example. This is all SMO needs to
+     * resume training, as whether it is bound follows from its value.
+     */
     double alpha = 0;
-    /** Is the Lagrange multiplier bound? (Only used by SMO) */
-    transient boolean bound = true;
     
     public SupportVector(DataVector x, int y) {
         if(Math.abs(y) != 1)
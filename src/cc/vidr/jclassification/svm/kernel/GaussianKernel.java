@@ -37,7 +37,22 @@ public class GaussianKernel implements Kernel {
         this.variance = variance;
     }
     
+    /**
+     * Return the variance of the Gaussian.
+     */
+    public double getVariance() {
+        return variance;
+    }
+    
     public double getValue(DataVector x1, DataVector x2) {
-        return Math.exp(-x1.sqDist(x2) / (2*variance));
+        // |x1-x2|^2 = |x1|^2 + |x2|^2 - 2 x1.x2, where the square norms are
+        // cached by the vectors, so that only a dot product is needed
+        // (rounding may make this slightly negative for nearby vectors)
+        final double r2 = x1.sqNorm() + x2.sqNorm() - 2*x1.dotProduct(x2);
+        return Math.exp(-Math.max(r2, 0) / (2*variance));
+    }
+    
+    public String toString() {
+        return "Gaussian(variance=" + variance + ")";
     }
 }
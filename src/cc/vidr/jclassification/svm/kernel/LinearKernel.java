@@ -36,4 +36,8 @@ public class LinearKernel implements Kernel {
     public double getValue(DataVector x1, DataVector x2) {
         return x1.dotProduct(x2);
     }
+    
+    public String toString() {
+        return "Linear";
+    }
 }
@@ -0,0 +1,205 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm.kernel;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.RealMatrix;
+import cc.vidr.jclassification.svm.vector.RealVector;
+import cc.vidr.jclassification.util.TaskUtil;
+
+/**
+ * An explicit feature map approximating the Gaussian kernel, using the
+ * random Fourier features of A Rahimi and B Recht (2007) in
+ * <a href="http://people.eecs.berkeley.edu/~brecht/papers/07.rah.rec.nips.pdf">
+ * Random Features for Large-Scale Kernel Machines</a>.
+ * 
+ * Each input x is mapped to
+ * $z(x)_j = \sqrt{2/D} \cos(\omega_j \cdot x + \phi_j)$, for j = 1..D,
+ * where each $\omega_j$ is drawn from $N(0, I/\sigma^2)$ and each $\phi_j$
+ * uniformly from $[0, 2\pi)$, so that $z(x_1) \cdot z(x_2)$ is an unbiased
+ * estimate of $K(x_1, x_2)$ with error $O(1/\sqrt{D})$.
+ * 
+ * A linear SVM trained on the mapped inputs (by SMO or Pegasos) therefore
+ * approximates the Gaussian SVM, but trains in time linear in the number
+ * of examples, and predicts in time independent of it. New inputs must be
+ * mapped by the same feature map before prediction.
+ * 
+ * @author  David A Roberts
+ */
+public class RandomFourierFeatures implements Serializable {
+    private static final long serialVersionUID = -4404541130716016744L;
+    /** The number of input vectors mapped in each parallel task */
+    private static final int TASK_SIZE = 256;
+    /** The variance of the Gaussian kernel */
+    private final double variance;
+    /** The number of input dimensions */
+    private final int dimension;
+    /** The number of features, D */
+    private final int numFeatures;
+    /** The seed the frequencies and phases are generated from */
+    private final long seed;
+    /**
+     * The random frequencies, one per feature. They are regenerated from
+     * the seed rather than serialized.
+     */
+    private transient RealVector[] omega;
+    /** The random phases, one per feature */
+    private transient double[] phi;
+    
+    /**
+     * Create a random feature map for the given kernel. Feature maps created
+     * with the same arguments are identical.
+     * 
+     * @param kernel       the Gaussian kernel to approximate
+     * @param dimension    the number of input dimensions, which must exceed
+     *                     the index of every non-zero element of the inputs
+     * @param numFeatures  the number of features, D
+     * @param seed         the seed to generate the random features from
+     */
+    public RandomFourierFeatures(GaussianKernel kernel, int dimension,
+            int numFeatures, long seed) {
+        if(dimension <= 0 || numFeatures <= 0)
+            throw new IllegalArgumentException(
+                    "the dimensions must be positive");
+        this.variance = kernel.getVariance();
+        this.dimension = dimension;
+        this.numFeatures = numFeatures;
+        this.seed = seed;
+        generate();
+    }
+    
+    /**
+     * Generate the frequencies and phases from the seed.
+     */
+    private void generate() {
+        final Random random = new Random(seed);
+        final double sigma = Math.sqrt(variance);
+        omega = new RealVector[numFeatures];
+        phi = new double[numFeatures];
+        for(int j = 0; j < numFeatures; j++) {
+            double[] w = new double[dimension];
+            for(int i = 0; i < dimension; i++)
+                w[i] = random.nextGaussian() / sigma;
+            omega[j] = new RealVector(w);
+            phi[j] = 2 * Math.PI * random.nextDouble();
+        }
+    }
+    
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        generate();
+    }
+    
+    /**
+     * Return the number of features, D.
+     */
+    public int size() {
+        return numFeatures;
+    }
+    
+    /**
+     * Map the given input vector into the feature space.
+     * 
+     * @param x  the input vector (dense or sparse)
+     * @return   the mapped vector
+     */
+    public RealVector map(DataVector x) {
+        double[] z = new double[numFeatures];
+        map(x, z, 0);
+        return new RealVector(z);
+    }
+    
+    /**
+     * Map the given input vector into the feature space, storing the result
+     * in z[offset..offset+D-1]. No memory is allocated.
+     * 
+     * @param x       the input vector (dense or sparse)
+     * @param z       the array to store the mapped vector in
+     * @param offset  the position to store the first feature at
+     */
+    public void map(DataVector x, double[] z, int offset) {
+        final double scale = Math.sqrt(2.0 / numFeatures);
+        for(int j = 0; j < numFeatures; j++)
+            z[offset + j] = scale * Math.cos(x.dotProduct(omega[j]) + phi[j]);
+    }
+    
+    /**
+     * Map each of the given input vectors into the feature space. The
+     * results are the rows of a single matrix, so that they can be added
+     * to an SVM in one contiguous block of memory.
+     * 
+     * @param xs  the input vectors
+     * @return    the mapped vectors, one per row
+     */
+    public RealMatrix map(DataVector[] xs) {
+        RealMatrix z = new RealMatrix(xs.length, numFeatures);
+        map(xs, z, 0, xs.length);
+        return z;
+    }
+    
+    /**
+     * Map each of the given input vectors into the feature space, in
+     * parallel.
+     * 
+     * @param xs        the input vectors
+     * @param executor  the executor to run the calculations with
+     * @return          the mapped vectors, one per row
+     */
+    public RealMatrix map(final DataVector[] xs, ExecutorService executor) {
+        final RealMatrix z = new RealMatrix(xs.length, numFeatures);
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for(int from = 0; from < xs.length; from += TASK_SIZE) {
+            final int start = from, end = Math.min(from + TASK_SIZE, xs.length);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    map(xs, z, start, end);
+                    return null;
+                }
+            });
+        }
+        TaskUtil.run(tasks, executor);
+        return z;
+    }
+    
+    /**
+     * Map the inputs xs[from..to-1] into the corresponding rows of z.
+     */
+    private void map(DataVector[] xs, RealMatrix z, int from, int to) {
+        double[] row = new double[numFeatures];
+        for(int k = from; k < to; k++) {
+            map(xs[k], row, 0);
+            z.setRow(k, row);
+        }
+    }
+}
@@ -31,6 +31,8 @@ package cc.vidr.jclassification.svm.vector;
 public class BitVector implements DataVector {
     private static final long serialVersionUID = 8184851900633995703L;
     private long[] vector;
+    /** The cached square norm, or 0 if it has not been computed */
+    private transient volatile int sqNorm = 0;
     
     public BitVector(boolean... vector) {
         this(pack(vector));
@@ -58,7 +60,9 @@ public class BitVector implements DataVector {
     }
     
     public double dotProduct(DataVector x) {
-        return dotProduct((BitVector) x);
+        if(x instanceof BitVector)
+            return dotProduct((BitVector) x);
+        return DataVectors.dotProduct(this, x);
     }
     
     public int dotProduct(BitVector x) {
@@ -70,7 +74,29 @@ public class BitVector implements DataVector {
     }
     
     public double sqDist(DataVector x) {
-        return hammingDist((BitVector) x);
+        if(x instanceof BitVector)
+            return hammingDist((BitVector) x);
+        return DataVectors.sqDist(this, x);
+    }
+    
+    public double sqNorm() {
+        if(sqNorm == 0)
+            sqNorm = dotProduct(this);
+        return sqNorm;
+    }
+    
+    /**
+     * Return the number of bits in this vector.
+     */
+    public int size() {
+        return vector.length * Long.SIZE;
+    }
+    
+    /**
+     * Return the bit at the given index, as 0 or 1.
+     */
+    public double get(int i) {
+        return (vector[i / Long.SIZE] >>> (i % Long.SIZE)) & 1;
     }
     
     /**
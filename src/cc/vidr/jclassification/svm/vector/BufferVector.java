@@ -0,0 +1,136 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm.vector;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A vector of real numbers backed by a DoubleBuffer, such as part of a
+ * memory-mapped file. The elements are read directly from the buffer,
+ * without being copied onto the heap.
+ * 
+ * @author  David A Roberts
+ */
+public class BufferVector implements DataVector {
+    private static final long serialVersionUID = 6410923748213005417L;
+    /** The elements, from index 0 to the buffer's limit */
+    private final transient DoubleBuffer vector;
+    /** The cached square norm, or 0 if it has not been computed */
+    private transient volatile double sqNorm = 0;
+    
+    /**
+     * Create a vector backed by the remaining elements of the given buffer.
+     * The buffer is not copied, and its position is not changed.
+     * 
+     * @param vector  the buffer
+     */
+    public BufferVector(DoubleBuffer vector) {
+        this.vector = vector.slice();
+    }
+    
+    public double dotProduct(DataVector x) {
+        if(x instanceof BufferVector)
+            return dotProduct((BufferVector) x);
+        if(x instanceof SparseVector)
+            return ((SparseVector) x).dotProduct(this);
+        return DataVectors.dotProduct(this, x);
+    }
+    
+    public double dotProduct(BufferVector x) {
+        final int n = Math.min(vector.limit(), x.vector.limit());
+        double prod = 0;
+        for(int i = 0; i < n; i++)
+            prod += vector.get(i) * x.vector.get(i);
+        return prod;
+    }
+    
+    public double sqDist(DataVector x) {
+        if(x instanceof BufferVector)
+            return sqDist((BufferVector) x);
+        if(x instanceof SparseVector)
+            return ((SparseVector) x).sqDist(this);
+        return DataVectors.sqDist(this, x);
+    }
+    
+    public double sqDist(BufferVector x) {
+        final int n = Math.min(vector.limit(), x.vector.limit());
+        double r2 = 0;
+        for(int i = 0; i < n; i++) {
+            double d = vector.get(i) - x.vector.get(i);
+            r2 += d*d;
+        }
+        return r2 + DataVectors.sqNorm(this, n) + DataVectors.sqNorm(x, n);
+    }
+    
+    public double sqNorm() {
+        if(sqNorm == 0)
+            sqNorm = dotProduct(this);
+        return sqNorm;
+    }
+    
+    /**
+     * Return the number of elements in this vector.
+     */
+    public int size() {
+        return vector.limit();
+    }
+    
+    /**
+     * Return the element at the given index.
+     */
+    public double get(int i) {
+        return vector.get(i);
+    }
+    
+    /**
+     * Add a multiple of this vector to the given array, element-wise.
+     * 
+     * @param sum    the array to add to, at least as long as this vector
+     * @param scale  the multiple of this vector to add
+     */
+    public void addTo(double[] sum, double scale) {
+        for(int i = 0; i < vector.limit(); i++)
+            sum[i] += scale * vector.get(i);
+    }
+    
+    /**
+     * Return a copy of this vector on the heap.
+     */
+    public RealVector toRealVector() {
+        double[] x = new double[vector.limit()];
+        vector.duplicate().get(x);
+        return new RealVector(x);
+    }
+    
+    public String toString() {
+        return toRealVector().toString();
+    }
+    
+    /**
+     * Buffers cannot be serialized, so serialize a copy on the heap.
+     */
+    private Object writeReplace() {
+        return toRealVector();
+    }
+}
@@ -26,6 +26,8 @@ import java.io.Serializable;
 
 /**
  * An interface for vectors. Not to be confused with the Java Vector class.
+ * Vectors of different types may be combined, and vectors of different
+ * sizes are treated as if the shorter one were padded with zeros.
  * 
  * @author  David A Roberts #42008921
  */
@@ -45,4 +47,29 @@ public interface DataVector extends Serializable {
      * @return   the square distance
      */
     double sqDist(DataVector x);
+    
+    /**
+     * Return the square norm of this vector (its dot product with itself).
+     * Implementations cache this value, so vectors must not be modified
+     * after it has been requested.
+     * 
+     * @return  the square norm
+     */
+    double sqNorm();
+    
+    /**
+     * Return the number of elements in this vector. All elements beyond
+     * this are zero.
+     * 
+     * @return  the number of elements
+     */
+    int size();
+    
+    /**
+     * Return the element at the given index.
+     * 
+     * @param i  the index, less than {@link #size()}
+     * @return   the element
+     */
+    double get(int i);
 }
@@ -0,0 +1,71 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+package cc.vidr.jclassification.svm.vector;
+
+/**
+ * Operations on vectors of different types, using the element accessors
+ * of {@link DataVector}. These are slower than the operations between
+ * vectors of the same type, so they are only used for mixed types.
+ * 
+ * @author  David A Roberts
+ */
+final class DataVectors {
+    private DataVectors() {}
+    
+    /**
+     * Return the dot product of two vectors.
+     */
+    static double dotProduct(DataVector x, DataVector y) {
+        final int n = Math.min(x.size(), y.size());
+        double prod = 0;
+        for(int i = 0; i < n; i++)
+            prod += x.get(i) * y.get(i);
+        return prod;
+    }
+    
+    /**
+     * Return the square distance between two vectors.
+     */
+    static double sqDist(DataVector x, DataVector y) {
+        final int n = Math.min(x.size(), y.size());
+        double r2 = 0;
+        for(int i = 0; i < n; i++) {
+            final double d = x.get(i) - y.get(i);
+            r2 += d*d;
+        }
+        return r2 + sqNorm(x, n) + sqNorm(y, n);
+    }
+    
+    /**
+     * Return the square norm of the elements of a vector from the given
+     * index onwards, i.e. its square distance from a vector of that size.
+     */
+    static double sqNorm(DataVector x, int from) {
+        double r2 = 0;
+        for(int i = from; i < x.size(); i++) {
+            final double xi = x.get(i);
+            r2 += xi*xi;
+        }
+        return r2;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm.vector;
+
+import java.util.Arrays;
+
+/**
+ * A vector of real numbers stored with single precision, using half the
+ * memory (and memory bandwidth) of RealVector. Arithmetic is still
+ * performed with double precision.
+ * 
+ * @author  David A Roberts
+ */
+public class FloatVector implements DataVector {
+    private static final long serialVersionUID = -2251806129846307712L;
+    private final float[] vector;
+    /** The cached square norm, or 0 if it has not been computed */
+    private transient volatile double sqNorm = 0;
+    
+    public FloatVector(float... vector) {
+        this.vector = vector;
+    }
+    
+    /**
+     * Create a single precision copy of the given vector.
+     * 
+     * @param x  the vector to copy
+     */
+    public FloatVector(RealVector x) {
+        this.vector = new float[x.size()];
+        for(int i = 0; i < vector.length; i++)
+            vector[i] = (float) x.get(i);
+    }
+    
+    /**
+     * Return a double precision copy of this vector.
+     */
+    public RealVector toRealVector() {
+        double[] x = new double[vector.length];
+        for(int i = 0; i < x.length; i++)
+            x[i] = vector[i];
+        return new RealVector(x);
+    }
+    
+    public double dotProduct(DataVector x) {
+        if(x instanceof FloatVector)
+            return dotProduct((FloatVector) x);
+        if(x instanceof SparseVector)
+            return ((SparseVector) x).dotProduct(this);
+        return DataVectors.dotProduct(this, x);
+    }
+    
+    public double dotProduct(FloatVector x) {
+        final int n = Math.min(vector.length, x.vector.length);
+        double prod = 0;
+        for(int i = 0; i < n; i++)
+            prod += (double) vector[i] * x.vector[i];
+        return prod;
+    }
+    
+    public double sqDist(DataVector x) {
+        if(x instanceof FloatVector)
+            return sqDist((FloatVector) x);
+        if(x instanceof SparseVector)
+            return ((SparseVector) x).sqDist(this);
+        return DataVectors.sqDist(this, x);
+    }
+    
+    public double sqDist(FloatVector x) {
+        final int n = Math.min(vector.length, x.vector.length);
+        double r2 = 0;
+        for(int i = 0; i < n; i++) {
+            double d = (double) vector[i] - x.vector[i];
+            r2 += d*d;
+        }
+        return r2 + DataVectors.sqNorm(this, n) + DataVectors.sqNorm(x, n);
+    }
+    
+    public double sqNorm() {
+        if(sqNorm == 0)
+            sqNorm = dotProduct(this);
+        return sqNorm;
+    }
+    
+    /**
+     * Return the number of elements in this vector.
+     */
+    public int size() {
+        return vector.length;
+    }
+    
+    /**
+     * Return the element at the given index.
+     */
+    public double get(int i) {
+        return vector[i];
+    }
+    
+    /**
+     * Add a multiple of this vector to the given array, element-wise.
+     * 
+     * @param sum    the array to add to, at least as long as this vector
+     * @param scale  the multiple of this vector to add
+     */
+    public void addTo(double[] sum, double scale) {
+        for(int i = 0; i < vector.length; i++)
+            sum[i] += scale * vector[i];
+    }
+    
+    public String toString() {
+        return Arrays.toString(vector);
+    }
+}
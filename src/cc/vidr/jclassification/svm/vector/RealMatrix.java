@@ -0,0 +1,131 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm.vector;
+
+import java.io.Serializable;
+
+/**
+ * A matrix of real numbers, stored contiguously in a single array in
+ * row-major order. Used to store a whole data set in one block of memory,
+ * rather than one array per example, so that examples are laid out
+ * sequentially and without per-row object overhead.
+ * 
+ * @author  David A Roberts
+ */
+public class RealMatrix implements Serializable {
+    private static final long serialVersionUID = 5209357761944127640L;
+    /** The elements, row by row */
+    private final double[] data;
+    /** The number of rows and columns (the row stride) */
+    private final int rows, cols;
+    
+    /**
+     * Create a matrix of zeros.
+     * 
+     * @param rows  the number of rows
+     * @param cols  the number of columns
+     */
+    public RealMatrix(int rows, int cols) {
+        this(new double[checkedSize(rows, cols)], cols);
+    }
+    
+    /**
+     * Create a matrix backed by the given array, which is not copied.
+     * 
+     * @param data  the elements, row by row
+     * @param cols  the number of columns
+     */
+    public RealMatrix(double[] data, int cols) {
+        if(cols <= 0 || data.length % cols != 0)
+            throw new IllegalArgumentException(
+                    "data length must be a multiple of cols");
+        this.data = data;
+        this.rows = data.length / cols;
+        this.cols = cols;
+    }
+    
+    /**
+     * Return rows*cols, checking that it fits in an array.
+     */
+    private static int checkedSize(int rows, int cols) {
+        final long size = (long) rows * cols;
+        if(rows < 0 || cols <= 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("invalid matrix size");
+        return (int) size;
+    }
+    
+    /**
+     * Return the number of rows.
+     */
+    public int rows() {
+        return rows;
+    }
+    
+    /**
+     * Return the number of columns.
+     */
+    public int cols() {
+        return cols;
+    }
+    
+    /**
+     * Return the element at the given position.
+     */
+    public double get(int i, int j) {
+        return data[i*cols + j];
+    }
+    
+    /**
+     * Set the element at the given position.
+     */
+    public void set(int i, int j, double value) {
+        data[i*cols + j] = value;
+    }
+    
+    /**
+     * Copy the given values into a row of the matrix.
+     * 
+     * @param i    the index of the row
+     * @param row  the values, one per column
+     */
+    public void setRow(int i, double... row) {
+        if(row.length != cols)
+            throw new IllegalArgumentException("row must have cols elements");
+        System.arraycopy(row, 0, data, i*cols, cols);
+    }
+    
+    /**
+     * Return a view of the given row, sharing storage with this matrix.
+     * Its elements should not be modified once it is in use, as vectors
+     * cache their norms.
+     * 
+     * @param i  the index of the row
+     * @return   the row
+     */
+    public RealVector getRow(int i) {
+        if(i < 0 || i >= rows)
+            throw new IndexOutOfBoundsException("row " + i);
+        return new RealVector(data, i*cols, cols);
+    }
+}
@@ -24,44 +24,121 @@ package cc.vidr.jclassification.svm.vector;
 
 import java.util.Arrays;
 
+import cc.vidr.jclassification.util.VectorMath;
+
 /**
- * A vector of real numbers (approximated by doubles).
+ * A vector of real numbers (approximated by doubles). The elements may
+ * occupy part of a larger array, such as a row of a {@link RealMatrix}.
  * 
  * @author  David A Roberts
  */
 public class RealVector implements DataVector {
     private static final long serialVersionUID = -8736795465347538756L;
     private final double[] vector;
+    /** The position of the first element in the array, and the length */
+    private final transient int offset, length;
+    /** The cached square norm, or 0 if it has not been computed */
+    private transient volatile double sqNorm = 0;
     
     public RealVector(double... vector) {
+        this(vector, 0, vector.length);
+    }
+    
+    /**
+     * Create a vector backed by part of the given array. The array is not
+     * copied.
+     * 
+     * @param vector  the array
+     * @param offset  the position of the first element
+     * @param length  the number of elements
+     */
+    public RealVector(double[] vector, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > vector.length)
+            throw new IndexOutOfBoundsException();
         this.vector = vector;
+        this.offset = offset;
+        this.length = length;
     }
     
     public double dotProduct(DataVector x) {
-        return dotProduct((RealVector) x);
+        if(x instanceof RealVector)
+            return dotProduct((RealVector) x);
+        if(x instanceof SparseVector)
+            return ((SparseVector) x).dotProduct(this);
+        return DataVectors.dotProduct(this, x);
     }
     
     public double dotProduct(RealVector x) {
-        double prod = 0;
-        for(int i = 0; i < vector.length; i++)
-            prod += vector[i] * x.vector[i];
-        return prod;
+        return VectorMath.dotProduct(vector, offset, x.vector, x.offset,
+                Math.min(length, x.length));
     }
     
     public double sqDist(DataVector x) {
-        return sqDist((RealVector) x);
+        if(x instanceof RealVector)
+            return sqDist((RealVector) x);
+        if(x instanceof SparseVector)
+            return ((SparseVector) x).sqDist(this);
+        return DataVectors.sqDist(this, x);
     }
     
     public double sqDist(RealVector x) {
-        double r2 = 0;
-        for(int i = 0; i < vector.length; i++) {
-            double d = vector[i] - x.vector[i];
-            r2 += d*d;
-        }
-        return r2;
+        final int n = Math.min(length, x.length);
+        return VectorMath.sqDist(vector, offset, x.vector, x.offset, n) +
+            DataVectors.sqNorm(this, n) + DataVectors.sqNorm(x, n);
+    }
+    
+    public double sqNorm() {
+        if(sqNorm == 0)
+            sqNorm = dotProduct(this);
+        return sqNorm;
+    }
+    
+    /**
+     * Return the number of elements in this vector.
+     */
+    public int size() {
+        return length;
+    }
+    
+    /**
+     * Return the element at the given index.
+     */
+    public double get(int i) {
+        return vector[offset + i];
+    }
+    
+    /**
+     * Add a multiple of this vector to the given array, element-wise.
+     * 
+     * @param sum    the array to add to, at least as long as this vector
+     * @param scale  the multiple of this vector to add
+     */
+    public void addTo(double[] sum, double scale) {
+        for(int i = 0; i < length; i++)
+            sum[i] += scale * vector[offset + i];
     }
     
     public String toString() {
-        return Arrays.toString(vector);
+        return Arrays.toString(
+                Arrays.copyOfRange(vector, offset, offset + length));
+    }
+    
+    /**
+     * Serialize only the elements of this vector, not the whole array
+     * that it may be part of.
+     */
+    private Object writeReplace() {
+        if(offset == 0 && length == vector.length)
+            return this;
+        return new RealVector(
+                Arrays.copyOfRange(vector, offset, offset + length));
+    }
+    
+    /**
+     * Restore the transient fields of a deserialized vector, which always
+     * spans its whole array.
+     */
+    private Object readResolve() {
+        return new RealVector(vector);
     }
 }
@@ -0,0 +1,192 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.svm.vector;
+
+import java.util.Arrays;
+
+/**
+ * A sparse vector of real numbers, storing only the non-zero elements.
+ * The memory usage and the cost of each operation scale with the number
+ * of non-zero elements, rather than the dimensionality of the vector.
+ * 
+ * @author  David A Roberts
+ */
+public class SparseVector implements DataVector {
+    private static final long serialVersionUID = 3920184655710362981L;
+    /** The indices of the non-zero elements, in increasing order */
+    private final int[] indices;
+    /** The values of the non-zero elements */
+    private final double[] values;
+    /** The cached square norm, or 0 if it has not been computed */
+    private transient volatile double sqNorm = 0;
+    
+    /**
+     * Create a sparse vector.
+     * 
+     * @param indices  the indices of the non-zero elements, which must be
+     *                 strictly increasing
+     * @param values   the corresponding values
+     */
+    public SparseVector(int[] indices, double[] values) {
+        if(indices.length != values.length)
+            throw new IllegalArgumentException(
+                    "indices and values must be the same length");
+        for(int p = 1; p < indices.length; p++)
+            if(indices[p] <= indices[p-1])
+                throw new IllegalArgumentException(
+                        "indices must be strictly increasing");
+        if(indices.length > 0 && indices[0] < 0)
+            throw new IllegalArgumentException("indices must be non-negative");
+        this.indices = indices;
+        this.values = values;
+    }
+    
+    public double dotProduct(DataVector x) {
+        if(x instanceof SparseVector)
+            return dotProduct((SparseVector) x);
+        // look up the non-zero elements of this vector in the other vector
+        double prod = 0;
+        final int size = x.size();
+        for(int p = 0; p < indices.length && indices[p] < size; p++)
+            prod += values[p] * x.get(indices[p]);
+        return prod;
+    }
+    
+    public double dotProduct(SparseVector x) {
+        // merge the two lists of indices
+        double prod = 0;
+        int p = 0, q = 0;
+        while(p < indices.length && q < x.indices.length) {
+            if(indices[p] < x.indices[q]) {
+                p++;
+            } else if(indices[p] > x.indices[q]) {
+                q++;
+            } else {
+                prod += values[p++] * x.values[q++];
+            }
+        }
+        return prod;
+    }
+    
+    public double sqDist(DataVector x) {
+        if(x instanceof SparseVector)
+            return sqDist((SparseVector) x);
+        // start with the square norm of x, then correct it for the
+        // elements that are non-zero in this vector
+        double r2 = x.sqNorm();
+        final int size = x.size();
+        for(int p = 0; p < indices.length; p++) {
+            final double xi = indices[p] < size ? x.get(indices[p]) : 0;
+            final double d = values[p] - xi;
+            r2 += d*d - xi*xi;
+        }
+        return r2;
+    }
+    
+    public double sqDist(SparseVector x) {
+        // merge the two lists of indices
+        double r2 = 0;
+        int p = 0, q = 0;
+        while(p < indices.length || q < x.indices.length) {
+            double d;
+            if(q == x.indices.length ||
+                    (p < indices.length && indices[p] < x.indices[q])) {
+                d = values[p++];
+            } else if(p == indices.length || indices[p] > x.indices[q]) {
+                d = x.values[q++];
+            } else {
+                d = values[p++] - x.values[q++];
+            }
+            r2 += d*d;
+        }
+        return r2;
+    }
+    
+    public double sqNorm() {
+        if(sqNorm == 0) {
+            double r2 = 0;
+            for(int p = 0; p < values.length; p++)
+                r2 += values[p] * values[p];
+            sqNorm = r2;
+        }
+        return sqNorm;
+    }
+    
+    /**
+     * Return the dimensionality of this vector, i.e. one more than the
+     * index of the last non-zero element.
+     */
+    public int size() {
+        return indices.length == 0 ? 0 : indices[indices.length-1] + 1;
+    }
+    
+    /**
+     * Return the element at the given index, found by binary search.
+     */
+    public double get(int i) {
+        final int p = Arrays.binarySearch(indices, i);
+        return p < 0 ? 0 : values[p];
+    }
+    
+    /**
+     * Return the number of non-zero elements in this vector.
+     */
+    public int nonZeros() {
+        return indices.length;
+    }
+    
+    /**
+     * Return the index of the p-th non-zero element.
+     */
+    public int index(int p) {
+        return indices[p];
+    }
+    
+    /**
+     * Return the value of the p-th non-zero element.
+     */
+    public double value(int p) {
+        return values[p];
+    }
+    
+    /**
+     * Add a multiple of this vector to the given array, element-wise.
+     * 
+     * @param sum    the array to add to, at least as long as this vector
+     * @param scale  the multiple of this vector to add
+     */
+    public void addTo(double[] sum, double scale) {
+        for(int p = 0; p < indices.length; p++)
+            sum[indices[p]] += scale * values[p];
+    }
+    
+    public String toString() {
+        StringBuilder s = new StringBuilder("{");
+        for(int p = 0; p < indices.length; p++) {
+            if(p > 0) s.append(", ");
+            s.append(indices[p]).append(':').append(values[p]);
+        }
+        return s.append('}').toString();
+    }
+}
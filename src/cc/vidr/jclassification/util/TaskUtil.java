@@ -0,0 +1,85 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+package cc.vidr.jclassification.util;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Utility functions for running parallel tasks.
+ * 
+ * @author  David A Roberts
+ */
+public class TaskUtil {
+    /**
+     * Run the given tasks with the executor, or one after another on the
+     * calling thread if there is no executor, waiting for all of them to
+     * finish. An exception thrown by a task is rethrown unchecked.
+     * 
+     * @param tasks     the tasks to run
+     * @param executor  the executor to run them with, or null
+     */
+    public static <T> void run(Collection<? extends Callable<T>> tasks,
+            ExecutorService executor) {
+        try {
+            if(executor == null) {
+                for(Callable<T> task : tasks)
+                    task.call();
+                return;
+            }
+            for(Future<T> future : executor.invokeAll(tasks))
+                future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        } catch(ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch(RuntimeException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Return the number of tasks that the given executor may run at once,
+     * or the given maximum if that is unknown.
+     * 
+     * @param executor  the executor, or null if tasks are run one after
+     *                  another
+     * @param max       the number of tasks
+     * @return          the number of tasks that may run at once
+     */
+    public static int parallelism(ExecutorService executor, int max) {
+        if(executor == null)
+            return 1;
+        if(executor instanceof ThreadPoolExecutor)
+            return Math.max(1, Math.min(max,
+                    ((ThreadPoolExecutor) executor).getMaximumPoolSize()));
+        return max;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+
+package cc.vidr.jclassification.util;
+
+import java.util.Random;
+
+/**
+ * Inner loops over arrays of doubles, shared by the vector classes and
+ * the neural network.
+ * 
+ * The sums are split across four independent accumulators. A loop with a
+ * single accumulator forms one long dependency chain, which stops the
+ * processor from overlapping the additions and the JIT compiler from
+ * vectorising the reduction; with four chains, both can proceed in
+ * parallel. As a result, the sums are rounded slightly differently from
+ * a simple loop.
+ * 
+ * Where the JDK's incubating Vector API is available, the dot product and
+ * square distance use it instead, with as many lanes as the processor's
+ * preferred vector size holds. This needs the classes in the simd source
+ * directory, compiled and run with
+ * <code>--add-modules jdk.incubator.vector</code>; otherwise (or if the
+ * system property <code>jclassification.scalar</code> is set) the scalar
+ * loops are used.
+ * 
+ * @author  David A Roberts
+ */
+public class VectorMath {
+    /** The smallest number of elements worth passing to the SIMD loops */
+    private static final int MIN_SIMD_LENGTH = 16;
+    /** The SIMD implementation of the loops, or null if unavailable */
+    private static final Loops simd = loadSimd();
+    
+    /**
+     * Implementations of the inner loops, for n elements of two arrays
+     * starting from the given positions.
+     */
+    interface Loops {
+        double dotProduct(double[] x, int xOffset,
+                double[] y, int yOffset, int n);
+        double sqDist(double[] x, int xOffset,
+                double[] y, int yOffset, int n);
+    }
+    
+    /**
+     * Load the SIMD implementation of the loops, if the Vector API is
+     * available and has more than one lane.
+     * 
+     * @return  the implementation, or null
+     */
+    private static Loops loadSimd() {
+        if(System.getProperty("jclassification.scalar") != null)
+            return null;
+        try {
+            return (Loops) Class.forName(
+                    "cc.vidr.jclassification.util.SimdLoops")
+                    .getDeclaredConstructor().newInstance();
+        } catch(Exception e) {
+            return null; // not compiled, or too few lanes
+        } catch(LinkageError e) {
+            return null; // the module has not been added
+        }
+    }
+    
+    /**
+     * Return a description of the loops in use.
+     */
+    public static String backend() {
+        return simd != null ? simd.toString() : "scalar";
+    }
+    
+    /**
+     * Return the dot product of the first n elements of two arrays.
+     */
+    public static double dotProduct(double[] x, double[] y, int n) {
+        return dotProduct(x, 0, y, 0, n);
+    }
+    
+    /**
+     * Return the dot product of n elements of two arrays, starting from the
+     * given positions.
+     */
+    public static double dotProduct(double[] x, int xOffset,
+            double[] y, int yOffset, int n) {
+        if(simd != null && n >= MIN_SIMD_LENGTH)
+            return simd.dotProduct(x, xOffset, y, yOffset, n);
+        return scalarDotProduct(x, xOffset, y, yOffset, n);
+    }
+    
+    /**
+     * The dot product with four independent accumulators.
+     */
+    private static double scalarDotProduct(double[] x, int xOffset,
+            double[] y, int yOffset, int n) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        final int shift = yOffset - xOffset, end = xOffset + n;
+        int i = xOffset;
+        for(; i + 3 < end; i += 4) {
+            s0 += x[i]   * y[i+shift];
+            s1 += x[i+1] * y[i+shift+1];
+            s2 += x[i+2] * y[i+shift+2];
+            s3 += x[i+3] * y[i+shift+3];
+        }
+        for(; i < end; i++)
+            s0 += x[i] * y[i+shift];
+        return (s0 + s1) + (s2 + s3);
+    }
+    
+    /**
+     * Return the square distance between the first n elements of two
+     * arrays.
+     */
+    public static double sqDist(double[] x, double[] y, int n) {
+        return sqDist(x, 0, y, 0, n);
+    }
+    
+    /**
+     * Return the square distance between n elements of two arrays,
+     * starting from the given positions.
+     */
+    public static double sqDist(double[] x, int xOffset,
+            double[] y, int yOffset, int n) {
+        if(simd != null && n >= MIN_SIMD_LENGTH)
+            return simd.sqDist(x, xOffset, y, yOffset, n);
+        return scalarSqDist(x, xOffset, y, yOffset, n);
+    }
+    
+    /**
+     * The square distance with four independent accumulators.
+     */
+    private static double scalarSqDist(double[] x, int xOffset,
+            double[] y, int yOffset, int n) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        final int shift = yOffset - xOffset, end = xOffset + n;
+        int i = xOffset;
+        for(; i + 3 < end; i += 4) {
+            final double d0 = x[i]   - y[i+shift],
+                         d1 = x[i+1] - y[i+shift+1],
+                         d2 = x[i+2] - y[i+shift+2],
+                         d3 = x[i+3] - y[i+shift+3];
+            s0 += d0*d0;
+            s1 += d1*d1;
+            s2 += d2*d2;
+            s3 += d3*d3;
+        }
+        for(; i < end; i++) {
+            final double d = x[i] - y[i+shift];
+            s0 += d*d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+    
+    /**
+     * Add scale times n elements of x to n elements of y, starting from the
+     * given positions.
+     */
+    public static void addScaled(double[] x, int xOffset, double scale,
+            double[] y, int yOffset, int n) {
+        final int shift = yOffset - xOffset, end = xOffset + n;
+        for(int i = xOffset; i < end; i++)
+            y[i+shift] += scale * x[i];
+    }
+    
+    /**
+     * The simple single accumulator dot product, for comparison.
+     */
+    private static double simpleDotProduct(double[] x, double[] y, int n) {
+        double prod = 0;
+        for(int i = 0; i < n; i++)
+            prod += x[i] * y[i];
+        return prod;
+    }
+    
+    /**
+     * The simple single accumulator square distance, for comparison.
+     */
+    private static double simpleSqDist(double[] x, double[] y, int n) {
+        double r2 = 0;
+        for(int i = 0; i < n; i++) {
+            double d = x[i] - y[i];
+            r2 += d*d;
+        }
+        return r2;
+    }
+    
+    /**
+     * Benchmark the loops against the simple versions, for vectors of
+     * 16 to 4096 elements. The SIMD loops are included if available.
+     */
+    public static void main(String[] args) {
+        Random random = new Random(0);
+        System.out.println("SIMD loops: " + backend());
+        System.out.println("n\tdot\tsimple\tsimd\t" +
+                "sqDist\tsimple\tsimd (ns per call)");
+        for(int n = 16; n <= 4096; n *= 4) {
+            double[] x = new double[n], y = new double[n];
+            for(int i = 0; i < n; i++) {
+                x[i] = random.nextGaussian();
+                y[i] = random.nextGaussian();
+            }
+            // keep the total work roughly constant across sizes
+            final int reps = (1 << 24) / n;
+            double[] times = new double[6];
+            double sink = 0;
+            for(int round = 0; round < 2; round++) { // first round warms up
+                for(int b = 0; b < 6; b++) {
+                    if(simd == null && b % 3 == 2)
+                        continue;
+                    final long start = System.nanoTime();
+                    for(int r = 0; r < reps; r++) {
+                        switch(b) {
+                        case 0: sink += scalarDotProduct(x, 0, y, 0, n); break;
+                        case 1: sink += simpleDotProduct(x, y, n); break;
+                        case 2: sink += simd.dotProduct(x, 0, y, 0, n); break;
+                        case 3: sink += scalarSqDist(x, 0, y, 0, n); break;
+                        case 4: sink += simpleSqDist(x, y, n); break;
+                        default: sink += simd.sqDist(x, 0, y, 0, n); break;
+                        }
+                    }
+                    times[b] = (double) (System.nanoTime() - start) / reps;
+                }
+            }
+            System.out.printf("%d\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f%n",
+                    n, times[0], times[1], times[2],
+                    times[3], times[4], times[5]);
+            if(sink == 42) System.out.println(); // defeat dead code removal
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+package cc.vidr.jclassification.svm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cc.vidr.jclassification.svm.kernel.GaussianKernel;
+import cc.vidr.jclassification.svm.vector.RealVector;
+import cc.vidr.jclassification.svm.vector.SparseVector;
+
+public class BinaryModelTest {
+    private static final double DELTA = 1e-9;
+    
+    @Test
+    public void mappedDenseModelScoresSparseQueries() throws IOException {
+        SVM svm = new SVM(new GaussianKernel(1), 10);
+        svm.add(new RealVector(1, 0, 2), +1);
+        svm.add(new RealVector(0, -1, 0), -1);
+        svm.vectors.get(0).alpha = 0.5;
+        svm.vectors.get(1).alpha = 0.5;
+        svm.b = 0.25;
+        
+        File file = File.createTempFile("model", ".bin");
+        file.deleteOnExit();
+        BinaryModel.write(svm, file);
+        SVM mapped = BinaryModel.map(file);
+        
+        SparseVector query = new SparseVector(
+                new int[] {0, 2}, new double[] {1, 1});
+        RealVector dense = new RealVector(1, 0, 1);
+        assertEquals(svm.output(dense), mapped.output(query), DELTA);
+        assertEquals(svm.output(dense), mapped.output(dense), DELTA);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+package cc.vidr.jclassification.svm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import cc.vidr.jclassification.svm.vector.DataVector;
+import cc.vidr.jclassification.svm.vector.FloatVector;
+import cc.vidr.jclassification.svm.vector.RealVector;
+import cc.vidr.jclassification.svm.vector.SparseVector;
+
+public class SVMTest {
+    private static final double DELTA = 1e-9;
+    
+    @Test
+    public void linearSparseSupportVectorsDenseQuery() {
+        SVM svm = new SVM();
+        svm.add(new SparseVector(new int[] {0}, new double[] {2}), +1);
+        svm.add(new SparseVector(new int[] {1}, new double[] {-1}), -1);
+        svm.vectors.get(0).alpha = 0.5;
+        svm.vectors.get(1).alpha = 2;
+        svm.b = 0.5;
+        svm.prune();
+        assertNotNull(svm.w);
+        
+        // w = 0.5*[2,0] - 2*[0,-1] = [1,2], and the queries are longer
+        DataVector[] xs = {
+            new RealVector(1, 1, 5, 7),
+            new FloatVector(1, 1, 5, 7),
+            new SparseVector(new int[] {0, 1, 3}, new double[] {1, 1, 7}),
+        };
+        for(DataVector x : xs)
+            assertEquals(2.5, svm.output(x), DELTA);
+        double[] u = new double[xs.length];
+        svm.output(xs, u);
+        for(double ui : u)
+            assertEquals(2.5, ui, DELTA);
+    }
+    
+    @Test
+    public void linearNoSupportVectors() {
+        SVM svm = new SVM();
+        svm.add(new RealVector(1, 2), +1); // alpha = 0, so it is pruned
+        svm.b = 0.75;
+        svm.prune();
+        assertEquals(0, svm.size());
+        assertEquals(-0.75, svm.output(new RealVector(3, 4, 5)), DELTA);
+        assertEquals(-0.75, svm.output(new FloatVector(3, 4)), DELTA);
+        assertEquals(-0.75, svm.output(
+                new SparseVector(new int[] {9}, new double[] {1})), DELTA);
+    }
+    
+    @Test
+    public void linearIgnoresUnprunedNonSupportVectors() {
+        SVM svm = new SVM();
+        svm.add(new RealVector(1, 0), +1);
+        svm.add(new RealVector(0, 1), -1);
+        svm.vectors.get(0).alpha = 1;
+        svm.vectors.get(1).alpha = SVM.EPSILON / 2; // not a support vector
+        svm.collapse();
+        assertNotNull(svm.w);
+        assertEquals(2, svm.size());
+        DataVector x = new RealVector(3, 4);
+        double u = svm.output(x);
+        assertEquals(3, u, DELTA);
+        svm.w = null; // use the kernel form
+        assertEquals(u, svm.output(x), DELTA);
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void addAfterCompact() {
+        SVM svm = new SVM();
+        svm.add(new RealVector(1, 2), +1);
+        svm.vectors.get(0).alpha = 1;
+        svm.compact();
+        svm.add(new RealVector(3, 4), -1);
+    }
+}
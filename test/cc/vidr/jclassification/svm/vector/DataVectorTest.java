@@ -0,0 +1,128 @@
+/*
+* Copyright (C) 2010-2011 David A Roberts <d@vidr.cc>
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+package cc.vidr.jclassification.svm.vector;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that every combination of vector types gives the same results as
+ * plain arithmetic on the elements, including vectors of different sizes.
+ * 
+ * @author  David A Roberts
+ */
+public class DataVectorTest {
+    private static final double DELTA = 1e-9;
+    /** Test vectors, including trailing zeros and different sizes */
+    private static final double[][] ELEMENTS = {
+        {},
+        {0, 0, 0},
+        {1.5, 0, -2, 0, 0.25},
+        {0, 3, 0, 4},
+        {-1, 2, -3, 4, -5, 6, -7},
+    };
+    
+    /**
+     * Return each representation of the given elements.
+     */
+    private static List<DataVector> representations(double[] x) {
+        List<DataVector> vectors = new ArrayList<DataVector>();
+        vectors.add(new RealVector(x.clone()));
+        vectors.add(sparse(x));
+        float[] f = new float[x.length];
+        for(int i = 0; i < x.length; i++)
+            f[i] = (float) x[i];
+        vectors.add(new FloatVector(f));
+        vectors.add(new BufferVector(DoubleBuffer.wrap(x.clone())));
+        return vectors;
+    }
+    
+    private static SparseVector sparse(double[] x) {
+        int n = 0;
+        for(double xi : x)
+            if(xi != 0) n++;
+        int[] indices = new int[n];
+        double[] values = new double[n];
+        for(int i = 0, p = 0; i < x.length; i++) {
+            if(x[i] == 0)
+                continue;
+            indices[p] = i;
+            values[p++] = x[i];
+        }
+        return new SparseVector(indices, values);
+    }
+    
+    private static double get(double[] x, int i) {
+        return i < x.length ? x[i] : 0;
+    }
+    
+    @Test
+    public void mixedTypes() {
+        for(double[] x : ELEMENTS) {
+            for(double[] y : ELEMENTS) {
+                double prod = 0, r2 = 0;
+                for(int i = 0; i < Math.max(x.length, y.length); i++) {
+                    prod += get(x, i) * get(y, i);
+                    final double d = get(x, i) - get(y, i);
+                    r2 += d*d;
+                }
+                for(DataVector u : representations(x)) {
+                    for(DataVector v : representations(y)) {
+                        final String pair = u.getClass().getSimpleName() +
+                            u + " " + v.getClass().getSimpleName() + v;
+                        assertEquals(pair, prod, u.dotProduct(v), DELTA);
+                        assertEquals(pair, r2, u.sqDist(v), DELTA);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void elementAccessors() {
+        for(double[] x : ELEMENTS) {
+            for(DataVector v : representations(x)) {
+                for(int i = 0; i < v.size(); i++)
+                    assertEquals(x[i], v.get(i), 0);
+                for(int i = v.size(); i < x.length; i++)
+                    assertEquals(0, x[i], 0);
+            }
+        }
+    }
+    
+    @Test
+    public void bitVectors() {
+        BitVector bits = new BitVector(5L, 0L);
+        RealVector real = new RealVector(1, 0, 1);
+        assertEquals(128, bits.size());
+        assertEquals(2, bits.dotProduct(real), 0);
+        assertEquals(2, real.dotProduct(bits), 0);
+        assertEquals(0, bits.sqDist(real), 0);
+        assertEquals(3, sparse(new double[] {0, 1}).sqDist(bits), 0);
+    }
+}